@@ -0,0 +1,171 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.bench;
+
+import static java.util.Arrays.asList;
+import static org.omg.spec.api4kp._20200801.taxonomy.parsinglevel.ParsingLevelSeries.Abstract_Knowledge_Expression;
+
+import edu.mayo.kmdp.knowledgebase.KnowledgeBaseProvider;
+import edu.mayo.kmdp.language.LanguageDeSerializer;
+import edu.mayo.kmdp.language.parsers.dmn.v1_2.DMN12Parser;
+import edu.mayo.kmdp.ops.rdf.CompactGraph;
+import edu.mayo.kmdp.ops.select.bpm.CPMConceptSelector;
+import java.util.concurrent.TimeUnit;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+import org.apache.jena.vocabulary.SKOS;
+import org.omg.spec.api4kp._20200801.Answer;
+import org.omg.spec.api4kp._20200801.id.Pointer;
+import org.omg.spec.api4kp._20200801.services.KnowledgeCarrier;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Concept selection from a synthetic decision composite, with and without compact graphs.
+ *
+ * 'select' measures the selection alone, which pays for the one-off freezing of the concepts;
+ * 'selectAndQuery' also queries the selected concepts repeatedly, which is where the compact
+ * graphs are expected to pay off. Run with '-prof gc' to compare the allocations per operation;
+ * the size, and the (estimated) footprint of the frozen concepts, are reported as secondary
+ * results.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CPMConceptSelectorBenchmark {
+
+  private static final Query CONCEPTS = QueryFactory.create(
+      "SELECT ?c ?l WHERE { ?c <" + RDF.type + "> <" + SKOS.Concept + ">; "
+          + "<" + RDFS.label + "> ?l. }");
+
+  @Param({"16", "128"})
+  int decisionModels;
+
+  @Param({"3"})
+  int fanOut;
+
+  @Param({"false", "true"})
+  boolean compactGraphs;
+
+  @Param({"10"})
+  int queries;
+
+  KnowledgeBaseProvider kbManager;
+  CPMConceptSelector selector;
+  Pointer kb;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    InMemoryAssets assets = new InMemoryAssets();
+    KnowledgeCarrier composite = SyntheticComposites.decisionComposite(0, decisionModels, fanOut);
+    assets.register(composite);
+
+    KnowledgeCarrier parsed = new LanguageDeSerializer(asList(new DMN12Parser()))
+        .applyLift(composite, Abstract_Knowledge_Expression)
+        .orElseThrow(IllegalStateException::new);
+
+    kbManager = new KnowledgeBaseProvider(assets.repository());
+    selector = new CPMConceptSelector(kbManager)
+        .withCompactGraphs(compactGraphs);
+    kb = selector.initKnowledgeBase(parsed, null)
+        .orElseThrow(IllegalStateException::new);
+    if (Outcomes.requireSuccess("selectAndQuery", selectAndQuery(new SelectionCounters())) == 0) {
+      throw new IllegalStateException("The selection did not return any concept");
+    }
+  }
+
+  /**
+   * The size of the selected concepts, and the (estimated) footprint of their indexes,
+   * if frozen
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class SelectionCounters {
+
+    public long triples;
+    public long nodes;
+    public long indexKB;
+
+    void record(Model concepts) {
+      triples = concepts.size();
+      if (concepts.getGraph() instanceof CompactGraph) {
+        CompactGraph graph = (CompactGraph) concepts.getGraph();
+        nodes = graph.nodeCount();
+        indexKB = graph.estimatedBytes() / 1024;
+      }
+    }
+  }
+
+  @Benchmark
+  public Answer<Pointer> select() {
+    Answer<Pointer> selected = selector.select(kb.getUuid(), kb.getVersionTag(), null, null);
+    if (selected.isSuccess()) {
+      selector.releaseKnowledgeBase(selected.get());
+    }
+    return selected;
+  }
+
+  @Benchmark
+  public Answer<Integer> selectAndQuery(SelectionCounters counters) {
+    Answer<Pointer> selected = selector.select(kb.getUuid(), kb.getVersionTag(), null, null);
+    Answer<Integer> rows = selected
+        .flatMap(selector::getKnowledgeBaseManifestation)
+        .flatOpt(kc -> kc.as(Model.class))
+        .map(concepts -> {
+          counters.record(concepts);
+          int n = 0;
+          for (int j = 0; j < queries; j++) {
+            n = count(concepts);
+          }
+          return n;
+        });
+    if (selected.isSuccess()) {
+      selector.releaseKnowledgeBase(selected.get());
+    }
+    return rows;
+  }
+
+  private int count(Model concepts) {
+    int rows = 0;
+    try (QueryExecution exec = QueryExecutionFactory.create(CONCEPTS, concepts)) {
+      ResultSet results = exec.execSelect();
+      while (results.hasNext()) {
+        results.next();
+        rows++;
+      }
+    }
+    return rows;
+  }
+
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.bench;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import edu.mayo.kmdp.ops.runtime.OperatorRegistry;
+import edu.mayo.kmdp.ops.tranx.bpm.CcpmToPlanDefPipeline;
+import edu.mayo.kmdp.ops.tranx.bpm.PlanDefinitionWriter;
+import edu.mayo.kmdp.ops.tranx.bpm.PreConstructedCcpmToPlanDefPipeline;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.hl7.fhir.dstu3.model.PlanDefinition;
+import org.omg.spec.api4kp._20200801.Answer;
+import org.omg.spec.api4kp._20200801.id.Pointer;
+import org.omg.spec.api4kp._20200801.services.KnowledgeCarrier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CcpmToPlanDefPipelineBenchmark {
+
+  @Param({"4"})
+  int cases;
+
+  @Param({"16", "128"})
+  int decisionModels;
+
+  @Param({"3"})
+  int fanOut;
+
+  @Param({"false", "true"})
+  boolean parallelFlattening;
+
+  KnowledgeCarrier composite;
+  CcpmToPlanDefPipeline pipeline;
+  ExecutorService executor;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    InMemoryAssets assets = new InMemoryAssets();
+    composite = SyntheticComposites.decisionComposite(cases, decisionModels, fanOut);
+    assets.register(composite);
+    pipeline = new PreConstructedCcpmToPlanDefPipeline(
+        assets.catalog(), assets.repository(), InMemoryAssets.emptyDataShapes());
+    if (parallelFlattening) {
+      executor = new ForkJoinPool();
+      pipeline.withParallelDecisionFlattening(executor);
+    }
+    Outcomes.requireSuccess("transform", transform());
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    if (executor != null) {
+      executor.shutdown();
+    }
+  }
+
+  @Benchmark
+  public Answer<KnowledgeCarrier> transform() {
+    // the pipeline consumes (deletes) the input KB
+    Pointer kb = pipeline.initKnowledgeBase(composite, null)
+        .orElseThrow(IllegalStateException::new);
+    return pipeline.applyNamedTransform(
+        CcpmToPlanDefPipeline.id, kb.getUuid(), kb.getVersionTag(), null);
+  }
+
+  @Benchmark
+  public Answer<byte[]> transformThenEncode() {
+    // the serialized PlanDefinition is materialized, then (notionally) sent
+    return transform()
+        .flatOpt(kc -> kc.as(PlanDefinition.class))
+        .map(pd -> OperatorRegistry.shared().fhirContext().newJsonParser()
+            .encodeResourceToString(pd)
+            .getBytes(UTF_8));
+  }
+
+  @Benchmark
+  public Answer<Long> transformAndStream() {
+    Pointer kb = pipeline.initKnowledgeBase(composite, null)
+        .orElseThrow(IllegalStateException::new);
+    return pipeline.applyNamedTransform(
+        CcpmToPlanDefPipeline.id, kb.getUuid(), kb.getVersionTag(), null,
+        PlanDefinitionWriter.json(), OutputStream.nullOutputStream());
+  }
+
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.bench;
+
+import edu.mayo.kmdp.ops.metrics.OperationMetrics;
+import edu.mayo.kmdp.ops.metrics.StageStats;
+import edu.mayo.kmdp.ops.runtime.OperatorRegistry;
+import edu.mayo.kmdp.ops.tranx.bpm.CcpmToPlanDefPipeline;
+import edu.mayo.kmdp.ops.tranx.bpm.PreConstructedCcpmToPlanDefPipeline;
+import java.util.concurrent.TimeUnit;
+import org.omg.spec.api4kp._20200801.Answer;
+import org.omg.spec.api4kp._20200801.id.Pointer;
+import org.omg.spec.api4kp._20200801.services.KnowledgeCarrier;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the latency of the first request served by a fresh JVM,
+ * with and without warming up the operators first.
+ * The time spent creating and warming up the operators is reported as secondary results.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class ColdStartBenchmark {
+
+  @Param({"false", "true"})
+  boolean warmUp;
+
+  KnowledgeCarrier composite;
+  CcpmToPlanDefPipeline pipeline;
+
+  // checked after the measurement, since a check in the setup would warm up the JVM
+  Answer<KnowledgeCarrier> outcome;
+
+  /**
+   * The registry metrics, as of the beginning of the (only) iteration
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class RegistryCounters {
+
+    public double startupMillis;
+    public double warmUpMillis;
+    public long warmUpFailures;
+
+    @Setup(Level.Iteration)
+    public void setup(ColdStartBenchmark benchmark) {
+      startupMillis = 0;
+      warmUpMillis = 0;
+      warmUpFailures = 0;
+      OperationMetrics metrics = OperatorRegistry.shared().getMetrics();
+      metrics.getStages().forEach((name, stats) -> {
+        if (name.startsWith(OperatorRegistry.STARTUP)) {
+          startupMillis += millis(stats);
+        } else if (name.equals(OperatorRegistry.WARM_UP + "total")) {
+          warmUpMillis = millis(stats);
+        } else if (name.startsWith(OperatorRegistry.WARM_UP)) {
+          warmUpFailures += stats.getFailures();
+        }
+      });
+    }
+
+    private static double millis(StageStats stats) {
+      return stats.getTotalTime(TimeUnit.MICROSECONDS) / 1000.0;
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setup() {
+    if (warmUp) {
+      OperatorRegistry.shared().warmUp();
+    }
+    InMemoryAssets assets = new InMemoryAssets();
+    composite = SyntheticComposites.decisionComposite(4, 16, 3);
+    assets.register(composite);
+    pipeline = new PreConstructedCcpmToPlanDefPipeline(
+        assets.catalog(), assets.repository(), InMemoryAssets.emptyDataShapes());
+  }
+
+  @TearDown(Level.Trial)
+  public void verify() {
+    Outcomes.requireSuccess("firstRequest", outcome);
+  }
+
+  @Benchmark
+  public Answer<KnowledgeCarrier> firstRequest(RegistryCounters counters) {
+    Pointer kb = pipeline.initKnowledgeBase(composite, null)
+        .orElseThrow(IllegalStateException::new);
+    outcome = pipeline.applyNamedTransform(
+        CcpmToPlanDefPipeline.id, kb.getUuid(), kb.getVersionTag(), null);
+    return outcome;
+  }
+
+}
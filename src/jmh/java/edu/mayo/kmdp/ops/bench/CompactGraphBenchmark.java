@@ -0,0 +1,146 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.bench;
+
+import edu.mayo.kmdp.ops.rdf.CompactGraph;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.vocabulary.OWL2;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+import org.omg.spec.api4kp._20200801.services.KnowledgeCarrier;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * SPARQL selection over the flattened ontologies of a family, held in the default graph vs
+ * a {@link CompactGraph}.
+ *
+ * Run with '-prof gc' to compare the allocations of the two graphs ('build'); the size, and
+ * the (estimated) footprint of the compact graph, are reported as secondary results.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CompactGraphBenchmark {
+
+  private static final Query LABELS = QueryFactory.create(
+      "SELECT ?c ?l WHERE { ?c <" + RDF.type + "> <" + OWL2.Class + ">; "
+          + "<" + RDFS.label + "> ?l. }");
+
+  private static final Query HIERARCHY = QueryFactory.create(
+      "SELECT ?c ?p WHERE { ?c <" + RDFS.subClassOf + "> ?p. ?p <" + RDFS.label + "> ?l. }");
+
+  @Param({"40"})
+  int ontologies;
+
+  @Param({"1000"})
+  int classes;
+
+  @Param({"false", "true"})
+  boolean compact;
+
+  Model flat;
+  Model model;
+
+  /**
+   * The size of the queried graph, and the (estimated) footprint of its indexes,
+   * if compact
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class GraphCounters {
+
+    public long triples;
+    public long nodes;
+    public long indexKB;
+
+    @Setup(Level.Iteration)
+    public void setup(CompactGraphBenchmark benchmark) {
+      triples = benchmark.model.size();
+      nodes = 0;
+      indexKB = 0;
+      if (benchmark.model.getGraph() instanceof CompactGraph) {
+        CompactGraph graph = (CompactGraph) benchmark.model.getGraph();
+        nodes = graph.nodeCount();
+        indexKB = graph.estimatedBytes() / 1024;
+      }
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setup() {
+    KnowledgeCarrier family = SyntheticComposites.ontologyFamily(ontologies, 4, classes);
+    flat = ModelFactory.createDefaultModel();
+    family.components()
+        .forEach(comp -> flat.read(new ByteArrayInputStream((byte[]) comp.getExpression()), null));
+    model = build();
+    if (count(LABELS) == 0 || count(HIERARCHY) == 0) {
+      throw new IllegalStateException("The selections did not match any class");
+    }
+  }
+
+  @Benchmark
+  public Model build() {
+    if (compact) {
+      return CompactGraph.freeze(flat);
+    }
+    return ModelFactory.createDefaultModel().add(flat);
+  }
+
+  @Benchmark
+  public int selectLabels(GraphCounters counters) {
+    return count(LABELS);
+  }
+
+  @Benchmark
+  public int selectHierarchy(GraphCounters counters) {
+    return count(HIERARCHY);
+  }
+
+  private int count(Query query) {
+    List<Object> rows = new ArrayList<>();
+    try (QueryExecution exec = QueryExecutionFactory.create(query, model)) {
+      ResultSet results = exec.execSelect();
+      while (results.hasNext()) {
+        rows.add(results.next());
+      }
+    }
+    return rows.size();
+  }
+
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.bench;
+
+import edu.mayo.kmdp.ops.cache.PersistentModelStore;
+import edu.mayo.kmdp.ops.tranx.owl2.ComplexOwl2SKOSTransrepresentator;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.omg.spec.api4kp._20200801.Answer;
+import org.omg.spec.api4kp._20200801.services.KnowledgeCarrier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ComplexOwl2SKOSTransrepresentatorBenchmark {
+
+  @Param({"5", "40"})
+  int ontologies;
+
+  @Param({"4"})
+  int chainLength;
+
+  @Param({"200"})
+  int classes;
+
+  KnowledgeCarrier family;
+
+  Path storeDir;
+  PersistentModelStore store;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    family = SyntheticComposites.ontologyFamily(ontologies, chainLength, classes);
+
+    // populated once, as a previous process would have done
+    storeDir = Files.createTempDirectory("skos-store");
+    store = PersistentModelStore.open(storeDir);
+    Outcomes.requireSuccess("skosify", new ComplexOwl2SKOSTransrepresentator()
+        .withPersistentStore(store)
+        .applyTransrepresent(family, null, null));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    store.invalidateAll();
+    Files.deleteIfExists(storeDir);
+  }
+
+  @Benchmark
+  public Answer<KnowledgeCarrier> skosify() {
+    // the transrepresentator accumulates its KBs: use a fresh instance per invocation
+    return new ComplexOwl2SKOSTransrepresentator()
+        .applyTransrepresent(family, null, null);
+  }
+
+  @Benchmark
+  public Answer<KnowledgeCarrier> skosifyCompact() {
+    return new ComplexOwl2SKOSTransrepresentator()
+        .withCompactGraphs(true)
+        .applyTransrepresent(family, null, null);
+  }
+
+  @Benchmark
+  public Answer<KnowledgeCarrier> skosifyWarmRestart() {
+    return new ComplexOwl2SKOSTransrepresentator()
+        .withPersistentStore(store)
+        .applyTransrepresent(family, null, null);
+  }
+
+}
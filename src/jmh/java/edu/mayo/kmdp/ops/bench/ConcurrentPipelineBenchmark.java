@@ -0,0 +1,88 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.bench;
+
+import edu.mayo.kmdp.ops.tranx.bpm.CcpmToPlanDefPipeline;
+import edu.mayo.kmdp.ops.tranx.bpm.PreConstructedCcpmToPlanDefPipeline;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.omg.spec.api4kp._20200801.Answer;
+import org.omg.spec.api4kp._20200801.id.Pointer;
+import org.omg.spec.api4kp._20200801.id.SemanticIdentifier;
+import org.omg.spec.api4kp._20200801.services.CompositeKnowledgeCarrier;
+import org.omg.spec.api4kp._20200801.services.KnowledgeCarrier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Many threads sharing a single pipeline instance, each transforming its own Knowledge Base.
+ *
+ * Run with different thread counts (e.g. -t 1, -t 2, -t 4 ...) to check that the
+ * throughput scales with the number of cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(4)
+public class ConcurrentPipelineBenchmark {
+
+  CcpmToPlanDefPipeline pipeline;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    InMemoryAssets assets = new InMemoryAssets();
+    assets.register(SyntheticComposites.decisionComposite(4, 16, 3));
+    pipeline = new PreConstructedCcpmToPlanDefPipeline(
+        assets.catalog(), assets.repository(), InMemoryAssets.emptyDataShapes());
+
+    Request check = new Request();
+    check.setup();
+    Outcomes.requireSuccess("transform", transform(check));
+  }
+
+  @State(Scope.Thread)
+  public static class Request {
+
+    KnowledgeCarrier composite;
+
+    @Setup(Level.Trial)
+    public void setup() {
+      // a composite (and thus a Knowledge Base) per thread
+      composite = ((CompositeKnowledgeCarrier) SyntheticComposites.decisionComposite(4, 16, 3))
+          .withAssetId(SemanticIdentifier.newId(UUID.randomUUID(), SyntheticComposites.VERSION));
+    }
+  }
+
+  @Benchmark
+  public Answer<KnowledgeCarrier> transform(Request request) {
+    Pointer kb = pipeline.initKnowledgeBase(request.composite, null)
+        .orElseThrow(IllegalStateException::new);
+    return pipeline.applyNamedTransform(
+        CcpmToPlanDefPipeline.id, kb.getUuid(), kb.getVersionTag(), null);
+  }
+
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.bench;
+
+import edu.mayo.kmdp.knowledgebase.KnowledgeBaseProvider;
+import edu.mayo.kmdp.ops.select.fhir.stu3.MultiQuestionnaireConceptSelector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.omg.spec.api4kp._20200801.Answer;
+import org.omg.spec.api4kp._20200801.id.Pointer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class MultiQuestionnaireConceptSelectorBenchmark {
+
+  @Param({"10", "200"})
+  int forms;
+
+  @Param({"25"})
+  int itemsPerForm;
+
+  @Param({"500"})
+  int vocabulary;
+
+  @Param({"false", "true"})
+  boolean parallel;
+
+  MultiQuestionnaireConceptSelector selector;
+  Pointer kb;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    KnowledgeBaseProvider kbManager = new KnowledgeBaseProvider(null);
+    selector = new MultiQuestionnaireConceptSelector(kbManager)
+        .withParallelSelection(parallel ? ForkJoinPool.commonPool() : null);
+    kb = kbManager.initKnowledgeBase(
+        SyntheticComposites.questionnaireBundle(forms, itemsPerForm, vocabulary), null)
+        .orElseThrow(IllegalStateException::new);
+    Outcomes.requireSuccess("select", select());
+  }
+
+  @Benchmark
+  public Answer<Pointer> select() {
+    return selector.select(kb.getUuid(), kb.getVersionTag(), null, null);
+  }
+
+}
@@ -0,0 +1,43 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.bench;
+
+import org.omg.spec.api4kp._20200801.Answer;
+
+/**
+ * Guards against benchmarks that (silently) measure a failure path: the operation under
+ * benchmark is run once at setup (or, for single-shot benchmarks, checked at teardown),
+ * and the trial is aborted unless it succeeds.
+ */
+public final class Outcomes {
+
+  private Outcomes() {
+    // static functions only
+  }
+
+  /**
+   * @param operation the name of the operation, for the error message
+   * @param outcome   the outcome of a run of the operation
+   * @return the value of the outcome
+   * @throws IllegalStateException if the operation failed
+   */
+  public static <T> T requireSuccess(String operation, Answer<T> outcome) {
+    if (outcome.isFailure()) {
+      throw new IllegalStateException(operation + " failed: "
+          + outcome.printExplanation());
+    }
+    return outcome.get();
+  }
+
+}
@@ -0,0 +1,174 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiPredicate;
+import java.util.function.Predicate;
+import java.util.function.ToLongBiFunction;
+
+/**
+ * A thread-safe, bounded, in-memory cache.
+ *
+ * Entries are weighed when added, and the least recently used entries are evicted
+ * until the total weight is within bounds. A plain LRU cache is a cache where each
+ * entry weighs 1.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class BoundedCache<K, V> {
+
+  private final long maxWeight;
+  private final ToLongBiFunction<? super K, ? super V> weigher;
+
+  private final Map<K, Weighed<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long totalWeight = 0;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  protected BoundedCache(long maxWeight, ToLongBiFunction<? super K, ? super V> weigher) {
+    if (maxWeight <= 0) {
+      throw new IllegalArgumentException("Cache bound must be positive, found " + maxWeight);
+    }
+    this.maxWeight = maxWeight;
+    this.weigher = weigher;
+  }
+
+  /**
+   * @param maxEntries the maximum number of entries
+   * @return a cache that evicts the least recently used entries
+   */
+  public static <K, V> BoundedCache<K, V> lru(long maxEntries) {
+    return new BoundedCache<>(maxEntries, (k, v) -> 1L);
+  }
+
+  /**
+   * @param maxWeight the maximum total weight of the entries
+   * @param weigher   estimates the weight (e.g. the size) of an entry
+   * @return a cache that evicts the least recently used entries, by weight
+   */
+  public static <K, V> BoundedCache<K, V> weighted(long maxWeight,
+      ToLongBiFunction<? super K, ? super V> weigher) {
+    return new BoundedCache<>(maxWeight, weigher);
+  }
+
+  public synchronized Optional<V> get(K key) {
+    Weighed<V> w = entries.get(key);
+    if (w == null) {
+      misses.increment();
+      return Optional.empty();
+    }
+    hits.increment();
+    return Optional.of(w.value);
+  }
+
+  public synchronized void put(K key, V value) {
+    long weight = Math.max(0L, weigher.applyAsLong(key, value));
+    Weighed<V> previous = entries.put(key, new Weighed<>(value, weight));
+    if (previous != null) {
+      totalWeight -= previous.weight;
+    }
+    totalWeight += weight;
+    evict();
+  }
+
+  public synchronized void invalidate(K key) {
+    Weighed<V> previous = entries.remove(key);
+    if (previous != null) {
+      totalWeight -= previous.weight;
+    }
+  }
+
+  public synchronized void invalidateIf(Predicate<? super K> test) {
+    invalidateEntries((key, value) -> test.test(key));
+  }
+
+  /**
+   * Evicts the entries that match the given test, on both the key and the value
+   */
+  public synchronized void invalidateEntries(BiPredicate<? super K, ? super V> test) {
+    // iterates without get(..), which would reorder the (access-ordered) entries
+    Iterator<Map.Entry<K, Weighed<V>>> iter = entries.entrySet().iterator();
+    while (iter.hasNext()) {
+      Map.Entry<K, Weighed<V>> e = iter.next();
+      if (test.test(e.getKey(), e.getValue().value)) {
+        totalWeight -= e.getValue().weight;
+        iter.remove();
+      }
+    }
+  }
+
+  public synchronized void invalidateAll() {
+    entries.clear();
+    totalWeight = 0;
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public synchronized long weight() {
+    return totalWeight;
+  }
+
+  public long hitCount() {
+    return hits.sum();
+  }
+
+  public long missCount() {
+    return misses.sum();
+  }
+
+  public long evictionCount() {
+    return evictions.sum();
+  }
+
+  private void evict() {
+    Iterator<Weighed<V>> iter = entries.values().iterator();
+    while (totalWeight > maxWeight && iter.hasNext()) {
+      totalWeight -= iter.next().weight;
+      iter.remove();
+      evictions.increment();
+    }
+  }
+
+  private static class Weighed<V> {
+
+    final V value;
+    final long weight;
+
+    Weighed(V value, long weight) {
+      this.value = value;
+      this.weight = weight;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "BoundedCache{" +
+        "size=" + size() +
+        ", weight=" + weight() + "/" + maxWeight +
+        ", hits=" + hitCount() +
+        ", misses=" + missCount() +
+        ", evictions=" + evictionCount() +
+        '}';
+  }
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.cache;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import org.omg.spec.api4kp._20200801.Answer;
+import org.omg.spec.api4kp._20200801.api.repository.asset.v4.KnowledgeAssetRepositoryApi;
+import org.omg.spec.api4kp._20200801.services.KnowledgeCarrier;
+
+/**
+ * A read-through cache in front of a Knowledge Asset Repository, for the retrieval of the
+ * carriers of specific versions of assets, i.e. the operations used to assemble a composite:
+ * {@link #getKnowledgeAssetVersionCanonicalCarrier(UUID, String, String)} and
+ * {@link #getKnowledgeAssetCarrierVersion(UUID, String, UUID, String, String)}.
+ *
+ * A published version is immutable, so the entries never become stale. Requests for the
+ * 'latest' version, and any other operation, always reach the repository.
+ * Only the carriers of successful Answers are cached, and each retrieval returns a copy,
+ * so that the callers can rewrite the carriers they are given.
+ */
+public final class CachingAssetRepository {
+
+  private static final String CANONICAL = "canonical";
+  private static final String ARTIFACT = "artifact";
+
+  private final KnowledgeAssetRepositoryApi delegate;
+  private final BoundedCache<List<Object>, KnowledgeCarrier> cache;
+  private final UnaryOperator<KnowledgeCarrier> copy;
+
+  /**
+   * @param delegate     the repository
+   * @param maxCarriers  the number of carriers to retain
+   * @param copy         copies a cached carrier, for each retrieval
+   */
+  public CachingAssetRepository(KnowledgeAssetRepositoryApi delegate, long maxCarriers,
+      UnaryOperator<KnowledgeCarrier> copy) {
+    this.delegate = delegate;
+    this.cache = BoundedCache.lru(maxCarriers);
+    this.copy = copy;
+  }
+
+  public Answer<KnowledgeCarrier> getKnowledgeAssetVersionCanonicalCarrier(UUID assetId,
+      String versionTag, String xAccept) {
+    return retrieve(versionTag != null
+            ? Arrays.asList(CANONICAL, assetId, versionTag, xAccept)
+            : null,
+        () -> delegate.getKnowledgeAssetVersionCanonicalCarrier(assetId, versionTag, xAccept));
+  }
+
+  public Answer<KnowledgeCarrier> getKnowledgeAssetCarrierVersion(UUID assetId,
+      String versionTag, UUID artifactId, String artifactVersionTag, String xAccept) {
+    return retrieve(versionTag != null && artifactVersionTag != null
+            ? Arrays.asList(ARTIFACT, assetId, versionTag, artifactId, artifactVersionTag, xAccept)
+            : null,
+        () -> delegate.getKnowledgeAssetCarrierVersion(
+            assetId, versionTag, artifactId, artifactVersionTag, xAccept));
+  }
+
+  /**
+   * Evicts all the cached versions of the given asset
+   */
+  public void invalidate(UUID assetId) {
+    cache.invalidateIf(key -> assetId.equals(key.get(1)));
+  }
+
+  public int size() {
+    return cache.size();
+  }
+
+  private Answer<KnowledgeCarrier> retrieve(List<Object> key,
+      Supplier<Answer<KnowledgeCarrier>> retrieval) {
+    if (key == null) {
+      return retrieval.get();
+    }
+    Optional<KnowledgeCarrier> hit = cache.get(key);
+    if (hit.isPresent()) {
+      return Answer.of(copy.apply(hit.get()));
+    }
+    Answer<KnowledgeCarrier> ans = retrieval.get();
+    if (ans.isSuccess()) {
+      cache.put(key, ans.get());
+      return ans.map(copy);
+    }
+    return ans;
+  }
+
+  /**
+   * Adapts this cache to the repository API, for the components that consume it
+   * (e.g. the assemblers). The two carrier retrievals are routed to this cache,
+   * with a null Accept header when the caller omits it; every other operation is
+   * forwarded to the repository as is.
+   *
+   * @return a repository client that retrieves each version of a carrier once
+   */
+  public KnowledgeAssetRepositoryApi asRepository() {
+    return (KnowledgeAssetRepositoryApi) Proxy.newProxyInstance(
+        KnowledgeAssetRepositoryApi.class.getClassLoader(),
+        new Class<?>[]{KnowledgeAssetRepositoryApi.class},
+        (proxy, method, args) -> route(proxy, method, args));
+  }
+
+  private Object route(Object proxy, Method method, Object[] args) throws Throwable {
+    if (method.getDeclaringClass() == Object.class) {
+      switch (method.getName()) {
+        case "equals":
+          return proxy == args[0];
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        default:
+          return "Caching " + delegate;
+      }
+    }
+    Class<?>[] params = method.getParameterTypes();
+    if ("getKnowledgeAssetVersionCanonicalCarrier".equals(method.getName())
+        && (params.length == 2 || params.length == 3)) {
+      return getKnowledgeAssetVersionCanonicalCarrier(
+          (UUID) args[0], (String) args[1], params.length == 3 ? (String) args[2] : null);
+    }
+    if ("getKnowledgeAssetCarrierVersion".equals(method.getName())
+        && (params.length == 4 || params.length == 5)) {
+      return getKnowledgeAssetCarrierVersion((UUID) args[0], (String) args[1],
+          (UUID) args[2], (String) args[3], params.length == 5 ? (String) args[4] : null);
+    }
+    try {
+      return method.invoke(delegate, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+}
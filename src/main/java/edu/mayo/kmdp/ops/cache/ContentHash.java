@@ -0,0 +1,121 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.cache;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.Optional;
+import org.omg.spec.api4kp._20200801.services.CompositeKnowledgeCarrier;
+import org.omg.spec.api4kp._20200801.services.KnowledgeCarrier;
+
+/**
+ * A digest of the serialized content of a (possibly composite) Knowledge Carrier.
+ *
+ * Only carriers whose expressions are serialized (binary or string) can be hashed:
+ * parsed ASTs do not have a stable, content-based identity.
+ */
+public final class ContentHash {
+
+  private final String digest;
+  private final long size;
+
+  private ContentHash(String digest, long size) {
+    this.digest = digest;
+    this.size = size;
+  }
+
+  /**
+   * @param kc a carrier, or a composite carrier whose components are serialized
+   * @return the digest of the carrier content, if the content is serialized
+   */
+  public static Optional<ContentHash> of(KnowledgeCarrier kc) {
+    if (kc == null) {
+      return Optional.empty();
+    }
+    MessageDigest md = newDigest();
+    long size = 0;
+    Iterator<KnowledgeCarrier> comps = kc instanceof CompositeKnowledgeCarrier
+        ? ((CompositeKnowledgeCarrier) kc).componentList().iterator()
+        : Optional.of(kc).stream().iterator();
+    while (comps.hasNext()) {
+      KnowledgeCarrier comp = comps.next();
+      byte[] bytes = toBytes(comp.getExpression());
+      if (bytes == null) {
+        return Optional.empty();
+      }
+      if (comp.getAssetId() != null) {
+        md.update(comp.getAssetId().getVersionId().toString().getBytes(UTF_8));
+      }
+      md.update(bytes);
+      size += bytes.length;
+    }
+    return Optional.of(
+        new ContentHash(Base64.getUrlEncoder().withoutPadding().encodeToString(md.digest()), size));
+  }
+
+  private static byte[] toBytes(Object expression) {
+    if (expression instanceof byte[]) {
+      return (byte[]) expression;
+    } else if (expression instanceof String) {
+      return ((String) expression).getBytes(UTF_8);
+    }
+    return null;
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  public String getDigest() {
+    return digest;
+  }
+
+  /**
+   * @return the number of content bytes that were hashed
+   */
+  public long getSize() {
+    return size;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    ContentHash that = (ContentHash) o;
+    return size == that.size && digest.equals(that.digest);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(digest, size);
+  }
+
+  @Override
+  public String toString() {
+    return digest;
+  }
+}
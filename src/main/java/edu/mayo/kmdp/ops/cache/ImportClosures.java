@@ -0,0 +1,170 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.cache;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.rdf.model.StmtIterator;
+import org.apache.jena.vocabulary.OWL2;
+import org.omg.spec.api4kp._20200801.taxonomy.dependencyreltype.DependencyTypeSeries;
+
+/**
+ * The dependency graph of a composite, as described by its (RDF) struct,
+ * where the nodes are the (versioned) URIs of the components.
+ *
+ * Supports the computation of the transitive closure of the dependencies of a component,
+ * and of a fingerprint of that closure: since the nodes are version URIs, the fingerprint
+ * of a component changes whenever the component, or any of its (transitive) dependencies,
+ * changes version.
+ */
+public final class ImportClosures {
+
+  // the predicates of the struct that denote a dependency between components
+  private static final Set<String> DEPENDENCY_PREDICATES = dependencyPredicates();
+
+  private final Map<String, Set<String>> dependencies;
+  private final Set<String> nodes;
+
+  private ImportClosures(Map<String, Set<String>> dependencies, Set<String> nodes) {
+    this.dependencies = dependencies;
+    this.nodes = nodes;
+  }
+
+  /**
+   * @param struct the RDF struct of a composite
+   * @return the dependency graph, with an edge for every dependency (e.g. import) statement
+   * between two components; other statements (e.g. types) are ignored
+   */
+  public static ImportClosures of(Model struct) {
+    Map<String, Set<String>> deps = new HashMap<>();
+    Set<String> nodes = new HashSet<>();
+    StmtIterator stmts = struct.listStatements();
+    while (stmts.hasNext()) {
+      Statement st = stmts.next();
+      if (!st.getSubject().isURIResource()) {
+        continue;
+      }
+      nodes.add(st.getSubject().getURI());
+      if (st.getObject().isURIResource()
+          && DEPENDENCY_PREDICATES.contains(st.getPredicate().getURI())) {
+        String dep = st.getObject().asResource().getURI();
+        nodes.add(dep);
+        deps.computeIfAbsent(st.getSubject().getURI(), k -> new HashSet<>())
+            .add(dep);
+      }
+    }
+    return new ImportClosures(deps, nodes);
+  }
+
+  /**
+   * @param node the URI of a component
+   * @return true if the struct describes the component: the dependencies of a component
+   * that is not described are unknown, rather than empty
+   */
+  public boolean contains(String node) {
+    return nodes.contains(node);
+  }
+
+  /**
+   * @param node the URI of a component
+   * @return the direct dependencies of the component
+   */
+  public Set<String> dependenciesOf(String node) {
+    return Collections.unmodifiableSet(dependencies.getOrDefault(node, Collections.emptySet()));
+  }
+
+  /**
+   * @param node the URI of a component
+   * @return the component, and all its transitive dependencies
+   */
+  public Set<String> closureOf(String node) {
+    Set<String> closure = new HashSet<>();
+    Deque<String> queue = new ArrayDeque<>();
+    queue.add(node);
+    while (!queue.isEmpty()) {
+      String n = queue.poll();
+      if (closure.add(n)) {
+        queue.addAll(dependencies.getOrDefault(n, Collections.emptySet()));
+      }
+    }
+    return closure;
+  }
+
+  /**
+   * @param changed the URIs of some components
+   * @return the components that depend, directly or transitively, on any of the given
+   * components, including the components themselves
+   */
+  public Set<String> affectedBy(Collection<String> changed) {
+    Map<String, Set<String>> dependents = new HashMap<>();
+    dependencies.forEach((n, deps) -> deps.forEach(
+        d -> dependents.computeIfAbsent(d, k -> new HashSet<>()).add(n)));
+
+    Set<String> affected = new HashSet<>();
+    Deque<String> queue = new ArrayDeque<>(changed);
+    while (!queue.isEmpty()) {
+      String n = queue.poll();
+      if (affected.add(n)) {
+        queue.addAll(dependents.getOrDefault(n, Collections.emptySet()));
+      }
+    }
+    return affected;
+  }
+
+  /**
+   * @param node the URI of a component
+   * @return a digest of the closure of the component
+   */
+  public String fingerprint(String node) {
+    MessageDigest md = newDigest();
+    for (String n : new TreeSet<>(closureOf(node))) {
+      md.update(n.getBytes(UTF_8));
+      md.update((byte) '\n');
+    }
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(md.digest());
+  }
+
+  private static Set<String> dependencyPredicates() {
+    Set<String> preds = new HashSet<>();
+    for (DependencyTypeSeries dep : DependencyTypeSeries.values()) {
+      preds.add(dep.getReferentId().toString());
+      preds.add(dep.getConceptId().toString());
+    }
+    preds.add(OWL2.imports.getURI());
+    return Collections.unmodifiableSet(preds);
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+}
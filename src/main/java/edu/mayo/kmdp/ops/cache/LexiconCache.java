@@ -0,0 +1,281 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.cache;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.rdf.model.StmtIterator;
+import org.apache.jena.vocabulary.RDFS;
+import org.apache.jena.vocabulary.SKOS;
+import org.omg.spec.api4kp._20200801.Answer;
+import org.omg.spec.api4kp._20200801.services.KnowledgeCarrier;
+
+/**
+ * Caches the lexica (terminology carriers) used to weave labels into artifacts,
+ * keyed by the (versioned) URIs of the vocabularies, together with a compact index
+ * of the concept labels.
+ *
+ * Lexica older than the time-to-live are still served, while a fresh copy is
+ * loaded in the background. A change of version of a vocabulary can also be
+ * signaled explicitly, triggering the reload of any lexicon that includes it.
+ * A change signaled while a lexicon is being reloaded triggers a further reload.
+ *
+ * Note that the cache does not distinguish between sources (catalogs/repositories):
+ * a cache should only be shared between clients that resolve vocabularies the same way.
+ * A cache stops refreshing its lexica once closed; the shared cache is never closed.
+ */
+public class LexiconCache implements AutoCloseable {
+
+  public static final Duration DEFAULT_TTL = Duration.ofHours(1);
+
+  private static final LexiconCache SHARED = new LexiconCache(DEFAULT_TTL);
+
+  private final Duration ttl;
+  private final Map<List<URI>, Lexicon> lexica = new ConcurrentHashMap<>();
+  private final ExecutorService refresher = Executors.newSingleThreadExecutor(r -> {
+    Thread t = new Thread(r, "lexicon-refresher");
+    t.setDaemon(true);
+    return t;
+  });
+
+  private final LongAdder loads = new LongAdder();
+  private final LongAdder hits = new LongAdder();
+
+  public LexiconCache(Duration ttl) {
+    this.ttl = ttl;
+  }
+
+  /**
+   * @return a process-wide cache, with the default time-to-live
+   */
+  public static LexiconCache shared() {
+    return SHARED;
+  }
+
+  /**
+   * Returns the lexica for the given vocabularies, loading them on first use
+   *
+   * @param vocabularies the vocabularies
+   * @param loader       retrieves the lexica, usually from an asset repository
+   * @return the carrier with the lexica
+   */
+  public Answer<KnowledgeCarrier> getLexica(URI[] vocabularies,
+      Function<URI[], Answer<KnowledgeCarrier>> loader) {
+    return getLexicon(vocabularies, loader)
+        .map(Lexicon::getCarrier);
+  }
+
+  /**
+   * Returns the lexica for the given vocabularies, with their concept/label index
+   *
+   * @param vocabularies the vocabularies
+   * @param loader       retrieves the lexica, usually from an asset repository
+   * @return the lexicon
+   */
+  public Answer<Lexicon> getLexicon(URI[] vocabularies,
+      Function<URI[], Answer<KnowledgeCarrier>> loader) {
+    List<URI> key = List.of(vocabularies);
+    Lexicon lex = lexica.get(key);
+    if (lex != null) {
+      hits.increment();
+      if (lex.isExpired(ttl)) {
+        refresh(key, lex);
+      }
+      return Answer.of(lex);
+    }
+    return load(vocabularies, loader)
+        .map(kc -> {
+          Lexicon fresh = new Lexicon(kc, loader);
+          Lexicon prev = lexica.putIfAbsent(key, fresh);
+          return prev != null ? prev : fresh;
+        });
+  }
+
+  /**
+   * Signals that a new version of the vocabulary is available: any lexicon that includes
+   * any version of the vocabulary is reloaded in the background
+   *
+   * @param vocabulary the (versioned, or unversioned) URI of the vocabulary that changed
+   */
+  public void onVersionChange(URI vocabulary) {
+    String series = seriesOf(vocabulary);
+    lexica.forEach((key, lex) -> {
+      if (includes(key, series)) {
+        refresh(key, lex);
+      }
+    });
+  }
+
+  /**
+   * Drops any lexicon that includes any version of the vocabulary
+   *
+   * @param vocabulary the (versioned, or unversioned) URI of the vocabulary
+   */
+  public void invalidate(URI vocabulary) {
+    String series = seriesOf(vocabulary);
+    lexica.keySet().removeIf(key -> includes(key, series));
+  }
+
+  public void invalidateAll() {
+    lexica.clear();
+  }
+
+  public long loadCount() {
+    return loads.sum();
+  }
+
+  public long hitCount() {
+    return hits.sum();
+  }
+
+  /**
+   * Stops the background refresh. The cached lexica are still served
+   */
+  @Override
+  public void close() {
+    refresher.shutdownNow();
+  }
+
+  private void refresh(List<URI> key, Lexicon lex) {
+    lex.pending.set(true);
+    if (!lex.refreshing.compareAndSet(false, true)) {
+      // the reload in progress will reload again
+      return;
+    }
+    try {
+      refresher.execute(() -> reload(key, lex));
+    } catch (RejectedExecutionException closed) {
+      lex.refreshing.set(false);
+    }
+  }
+
+  private void reload(List<URI> key, Lexicon lex) {
+    do {
+      try {
+        while (lex.pending.getAndSet(false)) {
+          // replaces the current lexicon, unless invalidated in the meantime
+          load(key.toArray(new URI[0]), lex.loader)
+              .map(kc -> lexica.computeIfPresent(key, (k, current) -> new Lexicon(kc, lex.loader)));
+        }
+      } finally {
+        lex.refreshing.set(false);
+      }
+      // a change may have been signaled after the last load, but before the flag was cleared
+    } while (lex.pending.get() && lex.refreshing.compareAndSet(false, true));
+  }
+
+  private static boolean includes(List<URI> key, String series) {
+    return key.stream().anyMatch(uri -> seriesOf(uri).equals(series));
+  }
+
+  /**
+   * @return the vocabulary URI, without the version: either a '/versions/{tag}' segment,
+   * as in the API4KP versioned identifiers, or a '#{tag}' fragment
+   */
+  private static String seriesOf(URI vocabulary) {
+    String uri = vocabulary.toString();
+    int frag = uri.indexOf('#');
+    if (frag >= 0) {
+      uri = uri.substring(0, frag);
+    }
+    int ver = uri.lastIndexOf("/versions/");
+    return ver >= 0 ? uri.substring(0, ver) : uri;
+  }
+
+  private Answer<KnowledgeCarrier> load(URI[] vocabularies,
+      Function<URI[], Answer<KnowledgeCarrier>> loader) {
+    loads.increment();
+    return loader.apply(Arrays.copyOf(vocabularies, vocabularies.length));
+  }
+
+
+  /**
+   * A loaded lexicon, with a compact index of the concept labels
+   */
+  public static final class Lexicon {
+
+    private final KnowledgeCarrier carrier;
+    private final Map<String, String> labels;
+    private final long loadedAt = System.nanoTime();
+
+    private final Function<URI[], Answer<KnowledgeCarrier>> loader;
+    private final AtomicBoolean refreshing = new AtomicBoolean(false);
+    private final AtomicBoolean pending = new AtomicBoolean(false);
+
+    private Lexicon(KnowledgeCarrier carrier, Function<URI[], Answer<KnowledgeCarrier>> loader) {
+      this.carrier = carrier;
+      this.loader = loader;
+      this.labels = index(carrier);
+    }
+
+    public KnowledgeCarrier getCarrier() {
+      return carrier;
+    }
+
+    /**
+     * @param concept the URI of a concept
+     * @return the preferred label (or, failing that, any label) of the concept
+     */
+    public Optional<String> getLabel(URI concept) {
+      return Optional.ofNullable(labels.get(concept.toString()));
+    }
+
+    public int size() {
+      return labels.size();
+    }
+
+    boolean isExpired(Duration ttl) {
+      return System.nanoTime() - loadedAt > ttl.toNanos();
+    }
+
+    private static Map<String, String> index(KnowledgeCarrier carrier) {
+      Map<String, String> idx = new HashMap<>();
+      carrier.components()
+          .map(kc -> kc.as(Model.class))
+          .flatMap(Optional::stream)
+          .forEach(m -> {
+            indexLabels(m, RDFS.label.getURI(), idx);
+            indexLabels(m, SKOS.prefLabel.getURI(), idx);
+          });
+      return idx.isEmpty() ? Collections.emptyMap() : Map.copyOf(idx);
+    }
+
+    private static void indexLabels(Model m, String labelProperty, Map<String, String> idx) {
+      StmtIterator stmts = m.listStatements(null, m.createProperty(labelProperty), (String) null);
+      while (stmts.hasNext()) {
+        Statement st = stmts.next();
+        if (st.getSubject().isURIResource() && st.getObject().isLiteral()) {
+          // later (preferred) labels override the generic ones
+          idx.put(st.getSubject().getURI(), st.getObject().asLiteral().getLexicalForm());
+        }
+      }
+    }
+  }
+
+}
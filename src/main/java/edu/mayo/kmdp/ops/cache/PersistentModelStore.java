@@ -0,0 +1,311 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.cache;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.omg.spec.api4kp._20200801.AbstractCarrier.ofAst;
+import static org.omg.spec.api4kp._20200801.AbstractCarrier.rep;
+import static org.omg.spec.api4kp._20200801.id.SemanticIdentifier.newId;
+import static org.omg.spec.api4kp._20200801.taxonomy.krlanguage.KnowledgeRepresentationLanguageSeries.OWL_2;
+
+import edu.mayo.kmdp.util.JSonUtil;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.riot.RDFLanguages;
+import org.omg.spec.api4kp._20200801.id.ResourceIdentifier;
+import org.omg.spec.api4kp._20200801.services.KnowledgeCarrier;
+import org.omg.spec.api4kp._20200801.services.transrepresentation.ModelMIMECoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A directory of RDF graphs, serialized in the (compact, binary) RDF Thrift format,
+ * which survives the restart of the process.
+ *
+ * Entries are addressed by opaque keys, which are expected to include the identity,
+ * the version and a digest of the content the graphs were derived from (see {@link #keyOf}),
+ * so that stale entries are never matched, rather than invalidated.
+ * Carriers are stored as their graph, plus a small descriptor with the ids and the
+ * representation of the carrier.
+ *
+ * Writes are atomic: concurrent readers (and processes) see either the previous
+ * or the new version of an entry, never a partial one.
+ *
+ * The store is an optional cache: I/O errors are logged, and reported as misses
+ * (or as failed writes), rather than failing the operation that uses the store.
+ */
+public final class PersistentModelStore {
+
+  private static final Logger logger = LoggerFactory.getLogger(PersistentModelStore.class);
+
+  private static final String GRAPH_EXT = ".rdft";
+  private static final String META_EXT = ".properties";
+
+  private final Path root;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder writes = new LongAdder();
+  private final LongAdder errors = new LongAdder();
+
+  private PersistentModelStore(Path root) {
+    this.root = root;
+  }
+
+  /**
+   * @param directory the directory holding the graphs, created if it does not exist
+   * @return a store backed by the given directory; if the directory cannot be created,
+   * every load will miss, and every write will fail (and be logged)
+   */
+  public static PersistentModelStore open(Path directory) {
+    PersistentModelStore store = new PersistentModelStore(directory);
+    try {
+      Files.createDirectories(directory);
+    } catch (IOException e) {
+      store.error("open " + directory, e);
+    }
+    return store;
+  }
+
+  /**
+   * Composes a key from its parts, which should collectively identify the content of an entry
+   * (e.g. the IRI and version of an ontology, and the digest of its serialization)
+   */
+  public static String keyOf(Object... parts) {
+    StringBuilder sb = new StringBuilder();
+    for (Object part : parts) {
+      sb.append(part).append('|');
+    }
+    return sb.toString();
+  }
+
+  public Optional<Model> load(String key) {
+    Path file = pathOf(key, GRAPH_EXT);
+    if (!Files.exists(file)) {
+      misses.increment();
+      return Optional.empty();
+    }
+    Model model = ModelFactory.createDefaultModel();
+    try (InputStream in = Files.newInputStream(file)) {
+      RDFDataMgr.read(model, in, RDFLanguages.THRIFT);
+    } catch (IOException | RuntimeException e) {
+      // unreadable (e.g. truncated by a crash): treat as a miss, and recompute
+      error("load " + file, e);
+      misses.increment();
+      return Optional.empty();
+    }
+    hits.increment();
+    return Optional.of(model);
+  }
+
+  /**
+   * @return true if the model has been stored
+   */
+  public boolean store(String key, Model model) {
+    return write(pathOf(key, GRAPH_EXT),
+        out -> RDFDataMgr.write(out, model, RDFFormat.RDF_THRIFT));
+  }
+
+  /**
+   * @return the carrier stored with the given key, with a parsed (Model) expression
+   */
+  public Optional<KnowledgeCarrier> loadCarrier(String key) {
+    Path metaFile = pathOf(key, META_EXT);
+    if (!Files.exists(metaFile)) {
+      misses.increment();
+      return Optional.empty();
+    }
+    Properties meta = new Properties();
+    try (InputStream in = Files.newInputStream(metaFile)) {
+      meta.load(in);
+    } catch (IOException e) {
+      error("load " + metaFile, e);
+      misses.increment();
+      return Optional.empty();
+    }
+    Optional<Model> model = load(key);
+    if (model.isEmpty()) {
+      return Optional.empty();
+    }
+    try {
+      KnowledgeCarrier kc = ofAst(model.get(), ModelMIMECoder.decode(meta.getProperty("rep"))
+          .orElse(rep(OWL_2)));
+      readId(meta, "asset").ifPresent(kc::withAssetId);
+      readId(meta, "artifact").ifPresent(kc::withArtifactId);
+      Optional.ofNullable(meta.getProperty("label")).ifPresent(kc::withLabel);
+      return Optional.of(kc);
+    } catch (RuntimeException e) {
+      // a corrupted descriptor
+      error("load " + metaFile, e);
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Stores a carrier whose expression is a parsed RDF Model. Other carriers are ignored.
+   *
+   * @return true if the carrier has been stored
+   */
+  public boolean storeCarrier(String key, KnowledgeCarrier kc) {
+    Optional<Model> model = kc.as(Model.class);
+    if (model.isEmpty()) {
+      return false;
+    }
+    Properties meta = new Properties();
+    writeId(meta, "asset", kc.getAssetId());
+    writeId(meta, "artifact", kc.getArtifactId());
+    if (kc.getLabel() != null) {
+      meta.setProperty("label", kc.getLabel());
+    }
+    if (kc.getRepresentation() != null) {
+      meta.setProperty("rep", ModelMIMECoder.encode(kc.getRepresentation()));
+    }
+    // the graph first: the descriptor marks the entry as complete
+    return store(key, model.get())
+        && write(pathOf(key, META_EXT), out -> meta.store(out, key));
+  }
+
+  public void invalidate(String key) {
+    try {
+      Files.deleteIfExists(pathOf(key, META_EXT));
+      Files.deleteIfExists(pathOf(key, GRAPH_EXT));
+    } catch (IOException e) {
+      error("invalidate " + key, e);
+    }
+  }
+
+  public void invalidateAll() {
+    try (Stream<Path> files = Files.list(root)) {
+      files.filter(f -> f.toString().endsWith(GRAPH_EXT) || f.toString().endsWith(META_EXT))
+          .forEach(f -> f.toFile().delete());
+    } catch (IOException e) {
+      error("invalidate " + root, e);
+    }
+  }
+
+  public Path getDirectory() {
+    return root;
+  }
+
+  public long hitCount() {
+    return hits.sum();
+  }
+
+  public long missCount() {
+    return misses.sum();
+  }
+
+  public long writeCount() {
+    return writes.sum();
+  }
+
+  /**
+   * @return the number of I/O errors, which have been logged, and otherwise ignored
+   */
+  public long errorCount() {
+    return errors.sum();
+  }
+
+  private void error(String operation, Exception e) {
+    errors.increment();
+    logger.warn("Persistent model store: unable to {}: {}", operation, e.toString());
+  }
+
+
+  private Path pathOf(String key, String ext) {
+    return root.resolve(fileNameOf(key) + ext);
+  }
+
+  private static String fileNameOf(String key) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(UTF_8));
+      StringBuilder sb = new StringBuilder();
+      for (byte b : digest) {
+        sb.append(String.format("%02x", b));
+      }
+      return sb.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private boolean write(Path target, IOWriter writer) {
+    Path tmp = null;
+    try {
+      tmp = Files.createTempFile(root, "tmp", null);
+      try (OutputStream out = Files.newOutputStream(tmp)) {
+        writer.write(out);
+      }
+      Files.move(tmp, target,
+          StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      writes.increment();
+      return true;
+    } catch (IOException | RuntimeException e) {
+      error("write " + target, e);
+      if (tmp != null) {
+        tmp.toFile().delete();
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Stores the full identifier (namespace, tag, version, name...) as JSON, as well as
+   * the uuid and version, which older descriptors were limited to
+   */
+  private static void writeId(Properties meta, String prefix, ResourceIdentifier id) {
+    if (id != null) {
+      meta.setProperty(prefix + ".uuid", id.getUuid().toString());
+      if (id.getVersionTag() != null) {
+        meta.setProperty(prefix + ".version", id.getVersionTag());
+      }
+      JSonUtil.writeJsonAsString(id)
+          .ifPresent(json -> meta.setProperty(prefix + ".json", json));
+    }
+  }
+
+  private static Optional<ResourceIdentifier> readId(Properties meta, String prefix) {
+    Optional<ResourceIdentifier> full = Optional.ofNullable(meta.getProperty(prefix + ".json"))
+        .flatMap(json -> JSonUtil.parseJson(json, ResourceIdentifier.class));
+    if (full.isPresent()) {
+      return full;
+    }
+    return Optional.ofNullable(meta.getProperty(prefix + ".uuid"))
+        .map(uuid -> meta.getProperty(prefix + ".version") != null
+            ? newId(UUID.fromString(uuid), meta.getProperty(prefix + ".version"))
+            : newId(UUID.fromString(uuid)));
+  }
+
+  @FunctionalInterface
+  private interface IOWriter {
+
+    void write(OutputStream out) throws IOException;
+  }
+
+}
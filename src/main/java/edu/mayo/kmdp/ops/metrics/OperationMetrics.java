@@ -0,0 +1,141 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import org.omg.spec.api4kp._20200801.Answer;
+
+/**
+ * Collects per-stage {@link StageStats} for a (complex) operation,
+ * as well as plain event counters, for events that are not timed stages.
+ *
+ * The statistics can be exported to a metrics registry via {@link #export(BiConsumer)}
+ * and {@link #exportCounters(BiConsumer)}, e.g. registering gauges/counters on each stage.
+ *
+ * {@link #disabled()} returns an instance that does not record anything,
+ * and adds no overhead beyond a virtual call per stage.
+ */
+public class OperationMetrics {
+
+  private static final OperationMetrics DISABLED = new OperationMetrics() {
+    @Override
+    public <T> Answer<T> time(String stage, Supplier<Answer<T>> op, ToLongFunction<T> sizer) {
+      return op.get();
+    }
+
+    @Override
+    public void record(String stage, long nanos, boolean failure, long items) {
+      // disabled
+    }
+
+    @Override
+    public void count(String counter, long n) {
+      // disabled
+    }
+  };
+
+  private final Map<String, StageStats> stages = new ConcurrentHashMap<>();
+  private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+  public static OperationMetrics disabled() {
+    return DISABLED;
+  }
+
+  public static OperationMetrics enabled() {
+    return new OperationMetrics();
+  }
+
+  /**
+   * Executes, and times, a stage of the operation
+   *
+   * @param stage the stage name
+   * @param op    the stage computation
+   * @param sizer counts the items produced by the stage, on success
+   * @return the stage output
+   */
+  public <T> Answer<T> time(String stage, Supplier<Answer<T>> op, ToLongFunction<T> sizer) {
+    long start = System.nanoTime();
+    Answer<T> ans;
+    try {
+      ans = op.get();
+    } catch (RuntimeException e) {
+      record(stage, System.nanoTime() - start, true, 0);
+      throw e;
+    }
+    long nanos = System.nanoTime() - start;
+    boolean failed = ans.isFailure();
+    record(stage, nanos, failed, failed ? 0 : sizer.applyAsLong(ans.get()));
+    return ans;
+  }
+
+  public void record(String stage, long nanos, boolean failure, long items) {
+    stages.computeIfAbsent(stage, StageStats::new)
+        .record(nanos, failure, items);
+  }
+
+  /**
+   * Adds to an event counter
+   *
+   * @param counter the counter name
+   * @param n       the number of events
+   */
+  public void count(String counter, long n) {
+    counters.computeIfAbsent(counter, c -> new LongAdder())
+        .add(n);
+  }
+
+  /**
+   * @param counter the counter name
+   * @return the number of events counted so far, 0 if none
+   */
+  public long getCount(String counter) {
+    LongAdder adder = counters.get(counter);
+    return adder != null ? adder.sum() : 0;
+  }
+
+  public StageStats getStage(String stage) {
+    return stages.get(stage);
+  }
+
+  public Map<String, StageStats> getStages() {
+    return Collections.unmodifiableMap(stages);
+  }
+
+  /**
+   * @param exporter a callback that publishes the statistics of a stage, e.g. to a registry
+   */
+  public void export(BiConsumer<String, StageStats> exporter) {
+    stages.forEach(exporter);
+  }
+
+  /**
+   * @param exporter a callback that publishes the current value of a counter
+   */
+  public void exportCounters(BiConsumer<String, Long> exporter) {
+    counters.forEach((name, adder) -> exporter.accept(name, adder.sum()));
+  }
+
+  @Override
+  public String toString() {
+    return counters.isEmpty()
+        ? stages.values().toString()
+        : stages.values() + " " + counters;
+  }
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency, failure and size statistics for one stage of an operation.
+ *
+ * Latencies are recorded in a histogram with power-of-two (nanosecond) buckets,
+ * which is lock-free and has a constant footprint.
+ */
+public class StageStats {
+
+  private static final int BUCKETS = 64;
+
+  private final String name;
+
+  private final LongAdder count = new LongAdder();
+  private final LongAdder failures = new LongAdder();
+  private final LongAdder totalNanos = new LongAdder();
+  private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+  private final LongAdder totalItems = new LongAdder();
+  private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+  StageStats(String name) {
+    this.name = name;
+  }
+
+  /**
+   * @param nanos   the duration of one execution of the stage
+   * @param failure true if the execution failed
+   * @param items   the number of items (e.g. carriers or components) the stage produced
+   */
+  public void record(long nanos, boolean failure, long items) {
+    count.increment();
+    if (failure) {
+      failures.increment();
+    }
+    totalNanos.add(nanos);
+    maxNanos.accumulate(nanos);
+    totalItems.add(items);
+    histogram.incrementAndGet(bucketOf(nanos));
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public long getFailures() {
+    return failures.sum();
+  }
+
+  public long getTotalItems() {
+    return totalItems.sum();
+  }
+
+  public long getTotalTime(TimeUnit unit) {
+    return unit.convert(totalNanos.sum(), TimeUnit.NANOSECONDS);
+  }
+
+  public long getMaxTime(TimeUnit unit) {
+    return unit.convert(maxNanos.get(), TimeUnit.NANOSECONDS);
+  }
+
+  public double getMeanTime(TimeUnit unit) {
+    long n = getCount();
+    return n == 0 ? 0.0 : (double) getTotalTime(TimeUnit.NANOSECONDS) / n
+        / TimeUnit.NANOSECONDS.convert(1, unit);
+  }
+
+  /**
+   * @param quantile a value in [0,1], e.g. 0.99
+   * @param unit     the time unit
+   * @return an upper bound of the given latency quantile (within a factor of 2)
+   */
+  public long getTimeQuantile(double quantile, TimeUnit unit) {
+    long[] counts = getHistogram();
+    long total = 0;
+    for (long c : counts) {
+      total += c;
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long target = (long) Math.ceil(quantile * total);
+    long seen = 0;
+    for (int j = 0; j < BUCKETS; j++) {
+      seen += counts[j];
+      if (seen >= target) {
+        return unit.convert(bucketUpperBound(j), TimeUnit.NANOSECONDS);
+      }
+    }
+    return getMaxTime(unit);
+  }
+
+  /**
+   * The raw latency histogram: bucket j counts the durations d (in ns) such that
+   * 2^(j-1) <= d < 2^j (bucket 0 counts the zero durations)
+   *
+   * @return a copy of the bucket counts
+   */
+  public long[] getHistogram() {
+    long[] counts = new long[BUCKETS];
+    for (int j = 0; j < BUCKETS; j++) {
+      counts[j] = histogram.get(j);
+    }
+    return counts;
+  }
+
+  public static long bucketUpperBound(int bucket) {
+    return bucket >= BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket;
+  }
+
+  private static int bucketOf(long nanos) {
+    return nanos <= 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+  }
+
+  @Override
+  public String toString() {
+    return name + "{" +
+        "count=" + getCount() +
+        ", failures=" + getFailures() +
+        ", mean=" + getMeanTime(TimeUnit.MILLISECONDS) + "ms" +
+        ", p99<=" + getTimeQuantile(0.99, TimeUnit.MILLISECONDS) + "ms" +
+        ", max=" + getMaxTime(TimeUnit.MILLISECONDS) + "ms" +
+        ", items=" + getTotalItems() +
+        '}';
+  }
+}
@@ -0,0 +1,347 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.rdf;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.graph.impl.GraphBase;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.util.iterator.NiceIterator;
+
+/**
+ * A read-only, in-memory RDF graph, optimized for footprint and pattern matching.
+ *
+ * Nodes are dictionary-encoded, and the triples are stored as sorted arrays of int ids,
+ * in three orders (SPO, POS and OSP), so that any triple pattern is answered by a binary
+ * search and a sequential scan, rather than by the hash lookups (and object headers)
+ * of the default graph. Each triple costs 36 bytes across the three indexes.
+ *
+ * The graph is frozen on construction: any update is denied.
+ */
+public final class CompactGraph extends GraphBase {
+
+  private static final int ANY = -1;
+
+  private final Node[] nodes;
+  private final Map<Node, Integer> ids;
+
+  // interleaved triples (3 ints each), sorted by the respective orders
+  private final int[] spo;
+  private final int[] pos;
+  private final int[] osp;
+  private final int size;
+
+  private CompactGraph(Node[] nodes, Map<Node, Integer> ids, int[] spo, int size) {
+    this.nodes = nodes;
+    this.ids = ids;
+    this.size = size;
+    this.spo = spo;
+    this.pos = reorder(spo, size, 1, 2, 0);
+    this.osp = reorder(spo, size, 2, 0, 1);
+  }
+
+  /**
+   * @param source a graph
+   * @return a compact, frozen copy of the graph
+   */
+  public static CompactGraph copyOf(Graph source) {
+    Map<Node, Integer> ids = new HashMap<>();
+    Node[] nodes = new Node[64];
+    int[] triples = new int[3 * Math.max(16, source.size())];
+    int n = 0;
+
+    ExtendedIterator<Triple> it = source.find(Node.ANY, Node.ANY, Node.ANY);
+    try {
+      while (it.hasNext()) {
+        Triple t = it.next();
+        if (3 * n + 3 > triples.length) {
+          triples = grow(triples, triples.length * 2);
+        }
+        Node[] spoNodes = {t.getSubject(), t.getPredicate(), t.getObject()};
+        for (int k = 0; k < 3; k++) {
+          Node node = spoNodes[k];
+          Integer id = ids.get(node);
+          if (id == null) {
+            id = ids.size();
+            ids.put(node, id);
+            if (id == nodes.length) {
+              Node[] more = new Node[nodes.length * 2];
+              System.arraycopy(nodes, 0, more, 0, nodes.length);
+              nodes = more;
+            }
+            nodes[id] = node;
+          }
+          triples[3 * n + k] = id;
+        }
+        n++;
+      }
+    } finally {
+      it.close();
+    }
+
+    sort(triples, 0, n - 1);
+    n = dedupe(triples, n);
+
+    Node[] dictionary = new Node[ids.size()];
+    System.arraycopy(nodes, 0, dictionary, 0, dictionary.length);
+    CompactGraph graph = new CompactGraph(dictionary, ids,
+        triples.length == 3 * n ? triples : grow(triples, 3 * n), n);
+    graph.getPrefixMapping().setNsPrefixes(source.getPrefixMapping());
+    return graph;
+  }
+
+  /**
+   * @param source a model
+   * @return a model backed by a compact, frozen copy of the source graph
+   */
+  public static Model freeze(Model source) {
+    return ModelFactory.createModelForGraph(copyOf(source.getGraph()));
+  }
+
+  /**
+   * @return the (estimated) bytes used by the indexes and the dictionary arrays,
+   * excluding the nodes themselves
+   */
+  public long estimatedBytes() {
+    return 3L * 3 * 4 * size + 8L * nodes.length + 48L * ids.size();
+  }
+
+  public int nodeCount() {
+    return nodes.length;
+  }
+
+  @Override
+  protected int graphBaseSize() {
+    return size;
+  }
+
+  @Override
+  protected ExtendedIterator<Triple> graphBaseFind(Triple pattern) {
+    int s = idOf(pattern.getMatchSubject());
+    int p = idOf(pattern.getMatchPredicate());
+    int o = idOf(pattern.getMatchObject());
+    if (s == Integer.MIN_VALUE || p == Integer.MIN_VALUE || o == Integer.MIN_VALUE) {
+      // a concrete node that does not occur in the graph
+      return NiceIterator.emptyIterator();
+    }
+
+    if (s != ANY) {
+      if (p != ANY) {
+        return scan(spo, 0, 1, 2, s, p, o);
+      }
+      return o != ANY
+          ? scan(osp, 1, 2, 0, o, s, ANY)
+          : scan(spo, 0, 1, 2, s, ANY, ANY);
+    }
+    if (p != ANY) {
+      return scan(pos, 2, 0, 1, p, o, ANY);
+    }
+    if (o != ANY) {
+      return scan(osp, 1, 2, 0, o, ANY, ANY);
+    }
+    return scan(spo, 0, 1, 2, ANY, ANY, ANY);
+  }
+
+  private int idOf(Node node) {
+    if (node == null || node == Node.ANY || node.isVariable()) {
+      return ANY;
+    }
+    Integer id = ids.get(node);
+    return id != null ? id : Integer.MIN_VALUE;
+  }
+
+  /**
+   * Scans the triples of an index that match a prefix of (up to) three ids
+   *
+   * @param index  the index
+   * @param sAt    the position of the subject in the index order
+   * @param pAt    the position of the predicate in the index order
+   * @param oAt    the position of the object in the index order
+   * @param k0     the first key, or ANY
+   * @param k1     the second key, or ANY
+   * @param k2     the third key, or ANY
+   */
+  private ExtendedIterator<Triple> scan(int[] index, int sAt, int pAt, int oAt,
+      int k0, int k1, int k2) {
+    int from = k0 == ANY ? 0 : lowerBound(index, k0, k1, k2);
+    int to = k0 == ANY ? size : upperBound(index, k0, k1, k2);
+
+    return new NiceIterator<>() {
+      int next = from;
+
+      @Override
+      public boolean hasNext() {
+        return next < to;
+      }
+
+      @Override
+      public Triple next() {
+        if (next >= to) {
+          throw new NoSuchElementException();
+        }
+        int base = 3 * next++;
+        return Triple.create(
+            nodes[index[base + sAt]], nodes[index[base + pAt]], nodes[index[base + oAt]]);
+      }
+    };
+  }
+
+  private int lowerBound(int[] index, int k0, int k1, int k2) {
+    int lo = 0;
+    int hi = size;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (comparePrefix(index, mid, k0, k1, k2) < 0) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  private int upperBound(int[] index, int k0, int k1, int k2) {
+    int lo = 0;
+    int hi = size;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (comparePrefix(index, mid, k0, k1, k2) <= 0) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  /**
+   * Compares the j-th triple of an index with a key prefix, where ANY terminates the prefix
+   */
+  private static int comparePrefix(int[] index, int j, int k0, int k1, int k2) {
+    int base = 3 * j;
+    int c = Integer.compare(index[base], k0);
+    if (c != 0 || k1 == ANY) {
+      return c;
+    }
+    c = Integer.compare(index[base + 1], k1);
+    if (c != 0 || k2 == ANY) {
+      return c;
+    }
+    return Integer.compare(index[base + 2], k2);
+  }
+
+
+  private static int[] reorder(int[] spo, int n, int first, int second, int third) {
+    int[] idx = new int[3 * n];
+    for (int j = 0; j < n; j++) {
+      idx[3 * j] = spo[3 * j + first];
+      idx[3 * j + 1] = spo[3 * j + second];
+      idx[3 * j + 2] = spo[3 * j + third];
+    }
+    sort(idx, 0, n - 1);
+    return idx;
+  }
+
+  private static int[] grow(int[] a, int length) {
+    int[] b = new int[length];
+    System.arraycopy(a, 0, b, 0, Math.min(a.length, length));
+    return b;
+  }
+
+  private static int dedupe(int[] t, int n) {
+    if (n == 0) {
+      return 0;
+    }
+    int w = 1;
+    for (int r = 1; r < n; r++) {
+      if (compare(t, r, w - 1) != 0) {
+        if (r != w) {
+          t[3 * w] = t[3 * r];
+          t[3 * w + 1] = t[3 * r + 1];
+          t[3 * w + 2] = t[3 * r + 2];
+        }
+        w++;
+      }
+    }
+    return w;
+  }
+
+  private static int compare(int[] t, int a, int b) {
+    int c = Integer.compare(t[3 * a], t[3 * b]);
+    if (c == 0) {
+      c = Integer.compare(t[3 * a + 1], t[3 * b + 1]);
+    }
+    if (c == 0) {
+      c = Integer.compare(t[3 * a + 2], t[3 * b + 2]);
+    }
+    return c;
+  }
+
+  private static void swap(int[] t, int a, int b) {
+    for (int k = 0; k < 3; k++) {
+      int tmp = t[3 * a + k];
+      t[3 * a + k] = t[3 * b + k];
+      t[3 * b + k] = tmp;
+    }
+  }
+
+  /**
+   * Sorts the triples lo..hi (inclusive) in lexicographic order
+   */
+  private static void sort(int[] t, int lo, int hi) {
+    while (lo < hi) {
+      if (hi - lo < 16) {
+        for (int i = lo + 1; i <= hi; i++) {
+          for (int j = i; j > lo && compare(t, j - 1, j) > 0; j--) {
+            swap(t, j - 1, j);
+          }
+        }
+        return;
+      }
+      // median of three, moved to hi
+      int mid = (lo + hi) >>> 1;
+      if (compare(t, mid, lo) < 0) {
+        swap(t, mid, lo);
+      }
+      if (compare(t, hi, lo) < 0) {
+        swap(t, hi, lo);
+      }
+      if (compare(t, mid, hi) < 0) {
+        swap(t, mid, hi);
+      }
+      int store = lo;
+      for (int i = lo; i < hi; i++) {
+        if (compare(t, i, hi) < 0) {
+          swap(t, i, store++);
+        }
+      }
+      swap(t, store, hi);
+      // recurse on the smaller partition, loop on the larger one
+      if (store - lo < hi - store) {
+        sort(t, lo, store - 1);
+        lo = store + 1;
+      } else {
+        sort(t, store + 1, hi);
+        hi = store - 1;
+      }
+    }
+  }
+
+}
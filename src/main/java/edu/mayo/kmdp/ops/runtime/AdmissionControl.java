@@ -0,0 +1,206 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.runtime;
+
+import edu.mayo.kmdp.ops.metrics.OperationMetrics;
+import java.time.Duration;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import org.omg.spec.api4kp._20200801.Answer;
+
+/**
+ * Bounds the number of requests an operation executes concurrently.
+ *
+ * Up to 'maxInFlight' requests are executed at a time, and up to 'maxQueued' more wait
+ * for their turn; any further request is rejected immediately, rather than adding
+ * to the load. Each request is given a {@link Deadline}, which starts when the request
+ * arrives, so that the time spent waiting counts against the time budget of the request.
+ *
+ * Rejections, expirations, cancellations and the time spent waiting are recorded in the
+ * {@link #getMetrics() metrics}, as the {@link #QUEUE_WAIT}, {@link #REJECTED},
+ * {@link #EXPIRED} and {@link #CANCELLED} stages. A request whose thread is interrupted
+ * while waiting is cancelled.
+ */
+public final class AdmissionControl {
+
+  public static final String QUEUE_WAIT = "admission-queue-wait";
+  public static final String REJECTED = "admission-rejected";
+  public static final String EXPIRED = "admission-expired";
+  public static final String CANCELLED = "admission-cancelled";
+
+  private static final AdmissionControl UNBOUNDED = new AdmissionControl(0, 0, null);
+
+  private final Semaphore permits;
+  private final int maxQueued;
+  private final Duration timeout;
+
+  private final AtomicInteger queued = new AtomicInteger();
+  private final LongAdder admitted = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+  private final LongAdder expired = new LongAdder();
+  private final LongAdder cancelled = new LongAdder();
+
+  private final OperationMetrics metrics;
+
+  private AdmissionControl(int maxInFlight, int maxQueued, Duration timeout) {
+    this.permits = maxInFlight > 0 ? new Semaphore(maxInFlight, true) : null;
+    this.maxQueued = maxQueued;
+    this.timeout = timeout;
+    this.metrics = maxInFlight > 0 ? OperationMetrics.enabled() : OperationMetrics.disabled();
+  }
+
+  /**
+   * @return an admission control that admits every request immediately, without a deadline
+   */
+  public static AdmissionControl unbounded() {
+    return UNBOUNDED;
+  }
+
+  /**
+   * @param maxInFlight the maximum number of requests executed concurrently
+   * @param maxQueued   the maximum number of requests waiting to be executed
+   * @param timeout     the time budget of each request, including the wait; null for no deadline
+   */
+  public static AdmissionControl of(int maxInFlight, int maxQueued, Duration timeout) {
+    if (maxInFlight < 1 || maxQueued < 0) {
+      throw new IllegalArgumentException("Invalid admission bounds: "
+          + maxInFlight + " in flight, " + maxQueued + " queued");
+    }
+    return new AdmissionControl(maxInFlight, maxQueued, timeout);
+  }
+
+  /**
+   * @return a new deadline for a request arriving now
+   */
+  public Deadline newDeadline() {
+    return timeout != null ? Deadline.in(timeout) : Deadline.none();
+  }
+
+  /**
+   * Executes a request with a new deadline, once admitted
+   *
+   * @see #admit(Deadline, Function)
+   */
+  public <T> Answer<T> admit(Function<Deadline, Answer<T>> request) {
+    return admit(newDeadline(), request);
+  }
+
+  /**
+   * Executes a request once admitted, failing it if the request cannot be admitted
+   *
+   * @param deadline the deadline of the request
+   * @param request  the request, which should check the deadline between its stages
+   * @return the outcome of the request, or a failure if the request was rejected, or
+   * its deadline expired (or it was cancelled) while waiting
+   */
+  public <T> Answer<T> admit(Deadline deadline, Function<Deadline, Answer<T>> request) {
+    if (permits == null) {
+      return request.apply(deadline);
+    }
+    boolean immediate;
+    try {
+      // unlike tryAcquire(), honors the fairness of the semaphore:
+      // a request cannot barge ahead of the ones already waiting
+      immediate = permits.tryAcquire(0, TimeUnit.NANOSECONDS);
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      deadline.cancel();
+      Answer<T> ans = deadline.exceeded("admission");
+      recordOutcome(deadline);
+      return ans;
+    }
+    if (!immediate) {
+      if (queued.incrementAndGet() > maxQueued) {
+        queued.decrementAndGet();
+        rejected.increment();
+        metrics.record(REJECTED, 0, true, 1);
+        return Answer.failed(new RejectedExecutionException(
+            "Too many requests: " + maxQueued + " already waiting"));
+      }
+      long start = System.nanoTime();
+      boolean acquired;
+      try {
+        acquired = permits.tryAcquire(deadline.remaining().toNanos(), TimeUnit.NANOSECONDS);
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        deadline.cancel();
+        acquired = false;
+      } finally {
+        queued.decrementAndGet();
+      }
+      metrics.record(QUEUE_WAIT, System.nanoTime() - start, !acquired, 1);
+      if (!acquired) {
+        Answer<T> ans = deadline.exceeded("admission");
+        recordOutcome(deadline);
+        return ans;
+      }
+    }
+    admitted.increment();
+    try {
+      Answer<T> ans = request.apply(deadline);
+      recordOutcome(deadline);
+      return ans;
+    } finally {
+      permits.release();
+    }
+  }
+
+  private void recordOutcome(Deadline deadline) {
+    if (deadline.wasExceeded()) {
+      expired.increment();
+      metrics.record(EXPIRED, 0, true, 1);
+    } else if (deadline.isCancelled()) {
+      cancelled.increment();
+      metrics.record(CANCELLED, 0, true, 1);
+    }
+  }
+
+  /**
+   * @return the number of requests currently waiting
+   */
+  public int queuedCount() {
+    return queued.get();
+  }
+
+  public long admittedCount() {
+    return admitted.sum();
+  }
+
+  public long rejectedCount() {
+    return rejected.sum();
+  }
+
+  /**
+   * @return the number of requests that did not complete (or start) before their deadline
+   */
+  public long expiredCount() {
+    return expired.sum();
+  }
+
+  /**
+   * @return the number of requests cancelled before they completed
+   */
+  public long cancelledCount() {
+    return cancelled.sum();
+  }
+
+  public OperationMetrics getMetrics() {
+    return metrics;
+  }
+
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.runtime;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeoutException;
+import org.omg.spec.api4kp._20200801.Answer;
+
+/**
+ * The point in time by which a request must complete, after which the remaining stages
+ * of the request are skipped. A deadline can also be cancelled, e.g. when the client
+ * abandons the request.
+ *
+ * Deadlines are checked between the stages of an operation, so that a stage in progress
+ * always completes, but no new stage is started:
+ * <pre>
+ *   Answer&lt;Pointer&gt; ptr = previous.flatMap(x -&gt; deadline.check("stage", x))
+ *       .flatMap(x -&gt; nextStage(x));
+ * </pre>
+ */
+public final class Deadline {
+
+  private final long expiresAtNanos;
+  private final boolean bounded;
+  private volatile boolean cancelled = false;
+  private volatile boolean exceeded = false;
+
+  private Deadline(long expiresAtNanos, boolean bounded) {
+    this.expiresAtNanos = expiresAtNanos;
+    this.bounded = bounded;
+  }
+
+  /**
+   * @return a new deadline that never expires, but can still be cancelled
+   */
+  public static Deadline none() {
+    return new Deadline(0, false);
+  }
+
+  /**
+   * @param timeout the time budget, starting now
+   */
+  public static Deadline in(Duration timeout) {
+    return new Deadline(System.nanoTime() + timeout.toNanos(), true);
+  }
+
+  /**
+   * Requests that the remaining stages be skipped
+   */
+  public void cancel() {
+    cancelled = true;
+  }
+
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  public boolean isExpired() {
+    return cancelled || (bounded && System.nanoTime() - expiresAtNanos >= 0);
+  }
+
+  /**
+   * @return the time left, zero if expired
+   */
+  public Duration remaining() {
+    if (cancelled) {
+      return Duration.ZERO;
+    }
+    return bounded
+        ? Duration.ofNanos(Math.max(0, expiresAtNanos - System.nanoTime()))
+        : Duration.ofNanos(Long.MAX_VALUE);
+  }
+
+  /**
+   * @param stage the stage about to start
+   * @param value the input of the stage
+   * @return the input, or a failure if the deadline has expired
+   */
+  public <T> Answer<T> check(String stage, T value) {
+    if (isExpired()) {
+      return exceeded(stage);
+    }
+    return Answer.of(value);
+  }
+
+  /**
+   * @param stage the stage that will not be started
+   * @return a failure, recording that the request was cancelled (CancellationException),
+   * or that the deadline was exceeded (TimeoutException)
+   */
+  public <T> Answer<T> exceeded(String stage) {
+    if (cancelled) {
+      return Answer.failed(new CancellationException("Request cancelled before stage " + stage));
+    }
+    exceeded = true;
+    return Answer.failed(new TimeoutException("Deadline exceeded before stage " + stage));
+  }
+
+  /**
+   * @return true if any stage was skipped because the deadline expired
+   * (rather than because the request was cancelled)
+   */
+  public boolean wasExceeded() {
+    return exceeded;
+  }
+
+}
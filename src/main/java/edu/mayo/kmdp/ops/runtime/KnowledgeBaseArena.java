@@ -0,0 +1,124 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.runtime;
+
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import org.omg.spec.api4kp._20200801.id.Pointer;
+
+/**
+ * Tracks the (intermediate) Knowledge Bases created by a complex operation, so that they
+ * can be released deterministically when the operation completes.
+ *
+ * Usage:
+ * <pre>
+ *   try (KnowledgeBaseArena arena = KnowledgeBaseArena.open(kbManager::deleteKnowledgeBase)) {
+ *     Answer&lt;Pointer&gt; ptr = kbManager.select(...).map(arena::track);
+ *     ...
+ *   }
+ * </pre>
+ * Knowledge Bases that are the actual result of the operation must be retained
+ * (or simply not tracked).
+ */
+public class KnowledgeBaseArena implements AutoCloseable {
+
+  private static final AtomicLong LIVE = new AtomicLong();
+
+  private final Consumer<UUID> deleter;
+  private final Set<UUID> tracked = ConcurrentHashMap.newKeySet();
+  private volatile boolean closed = false;
+
+  protected KnowledgeBaseArena(Consumer<UUID> deleter) {
+    this.deleter = deleter;
+  }
+
+  /**
+   * @param deleter deletes a Knowledge Base, given its id
+   * @return a new arena
+   */
+  public static KnowledgeBaseArena open(Consumer<UUID> deleter) {
+    return new KnowledgeBaseArena(deleter);
+  }
+
+  /**
+   * @return the number of Knowledge Bases tracked, and not yet released, across all arenas
+   */
+  public static long liveCount() {
+    return LIVE.get();
+  }
+
+  /**
+   * Registers a Knowledge Base for release when this arena is closed.
+   * Tracking the same Knowledge Base (e.g. different versions thereof) more than once is allowed.
+   *
+   * @param kbRef the pointer to the Knowledge Base
+   * @return the pointer, unchanged
+   */
+  public Pointer track(Pointer kbRef) {
+    track(kbRef.getUuid());
+    return kbRef;
+  }
+
+  public void track(UUID kbaseId) {
+    if (closed) {
+      throw new IllegalStateException("Arena already closed");
+    }
+    if (tracked.add(kbaseId)) {
+      LIVE.incrementAndGet();
+    }
+  }
+
+  /**
+   * Excludes a tracked Knowledge Base from the release, e.g. because it is the result
+   * of the operation
+   *
+   * @param kbaseId the id of the Knowledge Base
+   */
+  public void retain(UUID kbaseId) {
+    if (tracked.remove(kbaseId)) {
+      LIVE.decrementAndGet();
+    }
+  }
+
+  /**
+   * Releases a tracked Knowledge Base before the arena is closed
+   *
+   * @param kbaseId the id of the Knowledge Base
+   */
+  public void release(UUID kbaseId) {
+    if (tracked.remove(kbaseId)) {
+      LIVE.decrementAndGet();
+      deleter.accept(kbaseId);
+    }
+  }
+
+  /**
+   * @return the number of Knowledge Bases tracked by this arena, and not yet released
+   */
+  public int size() {
+    return tracked.size();
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    for (UUID kbaseId : tracked) {
+      release(kbaseId);
+    }
+  }
+
+}
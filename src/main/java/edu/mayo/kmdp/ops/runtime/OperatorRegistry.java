@@ -0,0 +1,357 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.runtime;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static org.omg.spec.api4kp._20200801.AbstractCarrier.rep;
+import static org.omg.spec.api4kp._20200801.AbstractCompositeCarrier.ofMixedAnonymousComposite;
+import static org.omg.spec.api4kp._20200801.id.SemanticIdentifier.newId;
+import static org.omg.spec.api4kp._20200801.services.transrepresentation.ModelMIMECoder.encode;
+import static org.omg.spec.api4kp._20200801.taxonomy.krformat.SerializationFormatSeries.XML_1_1;
+import static org.omg.spec.api4kp._20200801.taxonomy.krlanguage.KnowledgeRepresentationLanguageSeries.CMMN_1_1;
+import static org.omg.spec.api4kp._20200801.taxonomy.krlanguage.KnowledgeRepresentationLanguageSeries.DMN_1_2;
+import static org.omg.spec.api4kp._20200801.taxonomy.krlanguage.KnowledgeRepresentationLanguageSeries.FHIR_STU3;
+import static org.omg.spec.api4kp._20200801.taxonomy.krlanguage.KnowledgeRepresentationLanguageSeries.OWL_2;
+import static org.omg.spec.api4kp._20200801.taxonomy.krserialization.KnowledgeRepresentationLanguageSerializationSeries.RDF_XML_Syntax;
+import static org.omg.spec.api4kp._20200801.taxonomy.lexicon.LexiconSeries.PCV;
+import static org.omg.spec.api4kp._20200801.taxonomy.lexicon.LexiconSeries.SNOMED_CT;
+import static org.omg.spec.api4kp._20200801.taxonomy.parsinglevel.ParsingLevelSeries.Abstract_Knowledge_Expression;
+
+import ca.uhn.fhir.context.FhirContext;
+import edu.mayo.kmdp.knowledgebase.KnowledgeBaseProvider;
+import edu.mayo.kmdp.knowledgebase.binders.fhir.stu3.PlanDefDataShapeBinder;
+import edu.mayo.kmdp.knowledgebase.flatteners.dmn.v1_2.DMN12ModelFlattener;
+import edu.mayo.kmdp.knowledgebase.flatteners.fhir.stu3.PlanDefinitionFlattener;
+import edu.mayo.kmdp.knowledgebase.flatteners.rdf.JenaModelFlattener;
+import edu.mayo.kmdp.knowledgebase.selectors.fhir.stu3.PlanDefSelector;
+import edu.mayo.kmdp.knowledgebase.weavers.fhir.stu3.PlanDefTerminologyWeaver;
+import edu.mayo.kmdp.language.LanguageDeSerializer;
+import edu.mayo.kmdp.language.TransrepresentationExecutor;
+import edu.mayo.kmdp.language.parsers.cmmn.v1_1.CMMN11Parser;
+import edu.mayo.kmdp.language.parsers.dmn.v1_2.DMN12Parser;
+import edu.mayo.kmdp.language.parsers.owl2.JenaOwlParser;
+import edu.mayo.kmdp.language.translators.cmmn.v1_1.stu3.CmmnToPlanDefTranslator;
+import edu.mayo.kmdp.language.translators.dmn.v1_2.DmnToPlanDefTranslator;
+import edu.mayo.kmdp.language.translators.owl2.OWLtoSKOSTranscreator;
+import edu.mayo.kmdp.ops.metrics.OperationMetrics;
+import java.net.URI;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import org.apache.jena.vocabulary.SKOS;
+import org.omg.spec.api4kp._20200801.AbstractCarrier;
+import org.omg.spec.api4kp._20200801.Answer;
+import org.omg.spec.api4kp._20200801.api.knowledgebase.v4.server.CompositionalApiInternal._flattenArtifact;
+import org.omg.spec.api4kp._20200801.api.knowledgebase.v4.server.KnowledgeBaseApiInternal;
+import org.omg.spec.api4kp._20200801.api.transrepresentation.v4.server.DeserializeApiInternal;
+import org.omg.spec.api4kp._20200801.api.transrepresentation.v4.server.DeserializeApiInternal._applyLift;
+import org.omg.spec.api4kp._20200801.api.transrepresentation.v4.server.TransxionApiInternal;
+import org.omg.spec.api4kp._20200801.api.transrepresentation.v4.server.TransxionApiInternal._applyTransrepresent;
+import org.omg.spec.api4kp._20200801.datatypes.Bindings;
+import org.omg.spec.api4kp._20200801.id.Pointer;
+import org.omg.spec.api4kp._20200801.id.ResourceIdentifier;
+import org.omg.spec.api4kp._20200801.services.CompositeKnowledgeCarrier;
+import org.omg.spec.api4kp._20200801.services.KnowledgeCarrier;
+import org.omg.spec.api4kp._20200801.services.SyntacticRepresentation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A registry of the operators used by the complex operations,
+ * i.e. the parsers, translators, flatteners, selectors, binders and weavers.
+ *
+ * The operators are not documented as thread-safe, so each is held {@link #perThread per thread}:
+ * the accessors return the calling thread's instance, which is created on the first access
+ * and then shared by all the pipelines, selectors and transrepresentators running on that
+ * thread. The number of instances is bounded by the number of threads, rather than growing
+ * with the number of pipelines. The HAPI FHIR context, which is documented as thread-safe,
+ * is created once and shared by all the threads.
+ * Callers that need an operator across threads should hold the accessor
+ * (e.g. {@code registry::dmnFlattener}), and invoke it on the thread that uses the operator.
+ *
+ * The time spent creating each operator is recorded as a "startup:" stage of the
+ * {@link #getMetrics() metrics}. {@link #warmUp()} runs a minimal model through each stage,
+ * so that the first actual request does not pay for the cold start:
+ * its latency is recorded as a "warm-up:" stage.
+ */
+public final class OperatorRegistry {
+
+  public static final String STARTUP = "startup:";
+  public static final String WARM_UP = "warm-up:";
+
+  private static final Logger logger = LoggerFactory.getLogger(OperatorRegistry.class);
+
+  private static final OperatorRegistry SHARED = new OperatorRegistry();
+
+  private final Map<String, Object> operators = new ConcurrentHashMap<>();
+
+  private final OperationMetrics metrics = OperationMetrics.enabled();
+
+  private volatile boolean warm = false;
+
+  /**
+   * @return the registry shared within the process
+   */
+  public static OperatorRegistry shared() {
+    return SHARED;
+  }
+
+  /**
+   * @return a new, empty registry, e.g. to isolate operators with a custom configuration
+   */
+  public static OperatorRegistry newRegistry() {
+    return new OperatorRegistry();
+  }
+
+  /**
+   * Looks up a shared, thread-safe operator, creating it on the first lookup
+   *
+   * @param name    the name the operator is registered with
+   * @param factory creates the operator
+   * @return the (shared) operator
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T lookup(String name, Supplier<? extends T> factory) {
+    return (T) operators.computeIfAbsent(name, n -> create(n, factory));
+  }
+
+  /**
+   * Looks up an operator that is not thread-safe: each thread is given its own instance,
+   * created on the first access from that thread, and reused afterwards
+   *
+   * @param name    the name the operator is registered with
+   * @param factory creates the operator, once per thread
+   * @return a supplier of the calling thread's instance
+   */
+  @SuppressWarnings("unchecked")
+  public <T> Supplier<T> perThread(String name, Supplier<? extends T> factory) {
+    ThreadLocal<T> instances = (ThreadLocal<T>) operators.computeIfAbsent(name,
+        n -> ThreadLocal.withInitial(() -> create(n, factory)));
+    return instances::get;
+  }
+
+  /**
+   * Creates a new instance of an operator, for the exclusive use of the caller
+   *
+   * @param name    the name the operator is recorded with
+   * @param factory creates the operator
+   * @return the new operator
+   */
+  public <T> T create(String name, Supplier<? extends T> factory) {
+    long start = System.nanoTime();
+    T op = factory.get();
+    metrics.record(STARTUP + name, System.nanoTime() - start, false, 1);
+    return op;
+  }
+
+  public DeserializeApiInternal decisionModelParser() {
+    return ofThread("decision-model-parser",
+        () -> new LanguageDeSerializer(asList(new DMN12Parser(), new CMMN11Parser())));
+  }
+
+  public DMN12Parser dmnParser() {
+    return ofThread("dmn-parser", DMN12Parser::new);
+  }
+
+  public TransxionApiInternal planDefTranslator() {
+    return ofThread("plandef-translator", () -> new TransrepresentationExecutor(
+        asList(new CmmnToPlanDefTranslator(), new DmnToPlanDefTranslator())));
+  }
+
+  public _flattenArtifact planDefFlattener() {
+    return ofThread("plandef-flattener", PlanDefinitionFlattener::new);
+  }
+
+  public _flattenArtifact dmnFlattener() {
+    return ofThread("dmn-flattener", DMN12ModelFlattener::new);
+  }
+
+  public _applyLift owlParser() {
+    return ofThread("owl-parser", JenaOwlParser::new);
+  }
+
+  public _applyTransrepresent skosifier() {
+    return ofThread("skosifier", OWLtoSKOSTranscreator::new);
+  }
+
+  public JenaModelFlattener rdfFlattener() {
+    return ofThread("rdf-flattener", JenaModelFlattener::new);
+  }
+
+  public FhirContext fhirContext() {
+    return lookup("fhir-stu3-context", FhirContext::forDstu3);
+  }
+
+  /**
+   * Creates all the operators, and runs a minimal DMN/CMMN composite through the
+   * parse, flatten, translate, select, bind and weave stages, and a minimal ontology through
+   * the OWL parser and the skosifier, on the calling thread. Failures are recorded in the
+   * metrics and logged, but do not fail the warm-up. Only the first invocation has an effect.
+   *
+   * @return the metrics, with the startup and the first-request latency of each operator
+   */
+  public synchronized OperationMetrics warmUp() {
+    if (warm) {
+      return metrics;
+    }
+    long start = System.nanoTime();
+
+    // the HAPI context is the most expensive to initialize, and is needed by any FHIR output
+    fhirContext().newJsonParser();
+
+    KnowledgeCarrier decisions = sampleDecisionComposite();
+    UUID rootId = ((CompositeKnowledgeCarrier) decisions).mainComponent().getAssetId().getUuid();
+    ResourceIdentifier dmnId = ((CompositeKnowledgeCarrier) decisions).componentList().get(1)
+        .getAssetId();
+
+    Answer<KnowledgeCarrier> parsed = warm("parse",
+        () -> decisionModelParser().applyLift(decisions, Abstract_Knowledge_Expression));
+    // as the pipelines do, each decision model is flattened in the import graph rooted in it
+    warm("flatten-decisions", () -> parsed.flatMap(kc -> dmnFlattener()
+        .flattenArtifact(rootedIn((CompositeKnowledgeCarrier) kc, dmnId), dmnId.getUuid(), null)));
+    Answer<KnowledgeCarrier> planDefs = warm("translate",
+        () -> parsed.flatMap(kc -> planDefTranslator()
+            .applyTransrepresent(kc, encode(rep(FHIR_STU3, SNOMED_CT, PCV)), null)));
+    Answer<KnowledgeCarrier> planDef = warm("flatten-plandef",
+        () -> planDefs.flatMap(kc -> planDefFlattener()
+            .flattenArtifact((CompositeKnowledgeCarrier) kc, rootId, null)));
+    warmUpKnowledgeBase(planDef);
+
+    Answer<KnowledgeCarrier> owl = warm("owl-parse",
+        () -> owlParser().applyLift(sampleOntology(), Abstract_Knowledge_Expression,
+            encode(rep(OWL_2)), null));
+    warm("skosify",
+        () -> owl.flatMap(kc -> skosifier().applyTransrepresent(kc, encode(rep(OWL_2)), null)));
+
+    metrics.record(WARM_UP + "total", System.nanoTime() - start, false,
+        metrics.getStages().size());
+    warm = true;
+    return metrics;
+  }
+
+  /**
+   * Runs the (flattened) PlanDefinition through the select, bind and weave stages,
+   * in a Knowledge Base provider configured as the pipelines' ones, and discarded afterwards
+   */
+  private void warmUpKnowledgeBase(Answer<KnowledgeCarrier> planDef) {
+    KnowledgeBaseApiInternal kbManager = new KnowledgeBaseProvider(null)
+        .withNamedSelector(PlanDefSelector::new)
+        .withNamedWeaver(PlanDefTerminologyWeaver::new)
+        .withNamedBinder(PlanDefDataShapeBinder::new);
+    Answer<Pointer> planDefKB = planDef.flatMap(pd -> kbManager.initKnowledgeBase(pd, null));
+    warm("select", () -> planDefKB
+        .flatMap(ptr -> kbManager.namedSelect(ptr.getUuid(), ptr.getVersionTag(),
+            PlanDefSelector.id, PlanDefSelector.pivotQuery(new URI[0]), null)));
+    Answer<Pointer> bound = warm("bind", () -> planDefKB
+        .flatMap(ptr -> kbManager.bind(ptr.getUuid(), ptr.getVersionTag(), new Bindings<>())));
+    warm("weave", () -> bound
+        .flatMap(ptr -> PlanDefTerminologyWeaver.getLexica(new URI[0], null, null)
+            .flatMap(lex -> kbManager.namedWeave(ptr.getUuid(), ptr.getVersionTag(),
+                PlanDefTerminologyWeaver.id, lex, SKOS.altLabel.getLocalName()))));
+  }
+
+  public boolean isWarm() {
+    return warm;
+  }
+
+  public OperationMetrics getMetrics() {
+    return metrics;
+  }
+
+  private <T> T ofThread(String name, Supplier<? extends T> factory) {
+    return this.<T>perThread(name, factory).get();
+  }
+
+  private <T> Answer<T> warm(String stage, Supplier<Answer<T>> op) {
+    Answer<T> ans;
+    try {
+      ans = metrics.time(WARM_UP + stage, op, x -> 1);
+    } catch (RuntimeException e) {
+      // already recorded as a failure
+      logger.warn("Unable to warm up {}: {}", stage, e.getMessage(), e);
+      return Answer.failed(e);
+    }
+    if (ans.isFailure()) {
+      logger.warn("Unable to warm up {}: {}", stage, ans.printExplanation());
+    }
+    return ans;
+  }
+
+  private static CompositeKnowledgeCarrier rootedIn(CompositeKnowledgeCarrier importGraph,
+      ResourceIdentifier rootId) {
+    return new CompositeKnowledgeCarrier()
+        .withAssetId(importGraph.getAssetId())
+        .withLevel(importGraph.getLevel())
+        .withRepresentation(importGraph.getRepresentation())
+        .withRootId(rootId)
+        .withStruct(importGraph.getStruct())
+        .withComponent(importGraph.componentList());
+  }
+
+
+  private static KnowledgeCarrier sampleDecisionComposite() {
+    ResourceIdentifier caseId = sampleId("cmmn");
+    ResourceIdentifier dmnId = sampleId("dmn");
+    String cmmn = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+        + "<definitions xmlns=\"http://www.omg.org/spec/CMMN/20151109/MODEL\""
+        + " id=\"_" + caseId.getUuid() + "\" name=\"Warm-up Case\""
+        + " targetNamespace=\"" + caseId.getVersionId() + "\">\n"
+        + "  <case id=\"_case\" name=\"Warm-up Case\">\n"
+        + "    <casePlanModel id=\"_cpm\" name=\"Warm-up Case\"/>\n"
+        + "  </case>\n"
+        + "</definitions>\n";
+    String dmn = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+        + "<definitions xmlns=\"https://www.omg.org/spec/DMN/20180521/MODEL/\""
+        + " id=\"_" + dmnId.getUuid() + "\" name=\"Warm-up Decisions\""
+        + " namespace=\"" + dmnId.getVersionId() + "\">\n"
+        + "  <decision id=\"_d\" name=\"Warm-up Decision\">\n"
+        + "    <variable name=\"Warm-up Decision\" typeRef=\"boolean\"/>\n"
+        + "  </decision>\n"
+        + "</definitions>\n";
+    return ofMixedAnonymousComposite(caseId, asList(
+        sample(caseId, cmmn, rep(CMMN_1_1, XML_1_1)),
+        sample(dmnId, dmn, rep(DMN_1_2, XML_1_1))));
+  }
+
+  private static KnowledgeCarrier sampleOntology() {
+    ResourceIdentifier ontoId = sampleId("owl");
+    String iri = ontoId.getVersionId().toString();
+    String owl = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+        + "<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\"\n"
+        + "    xmlns:rdfs=\"http://www.w3.org/2000/01/rdf-schema#\"\n"
+        + "    xmlns:owl=\"http://www.w3.org/2002/07/owl#\">\n"
+        + "  <owl:Ontology rdf:about=\"" + iri + "\"/>\n"
+        + "  <owl:Class rdf:about=\"" + iri + "#Thing\">\n"
+        + "    <rdfs:label>Thing</rdfs:label>\n"
+        + "  </owl:Class>\n"
+        + "</rdf:RDF>\n";
+    return sample(ontoId, owl, rep(OWL_2, RDF_XML_Syntax, XML_1_1));
+  }
+
+  private static ResourceIdentifier sampleId(String kind) {
+    return newId(UUID.nameUUIDFromBytes(("warm-up#" + kind).getBytes(UTF_8)), "0.0.0");
+  }
+
+  private static KnowledgeCarrier sample(ResourceIdentifier assetId, String content,
+      SyntacticRepresentation rep) {
+    return AbstractCarrier.of(content.getBytes(UTF_8))
+        .withAssetId(assetId)
+        .withArtifactId(newId(UUID.nameUUIDFromBytes(content.getBytes(UTF_8)), "0.0.0"))
+        .withLabel("Warm-up")
+        .withRepresentation(rep);
+  }
+
+}
@@ -0,0 +1,232 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.runtime;
+
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Coalesces concurrent, identical requests: while a request with a given key is in flight,
+ * any other request with the same key waits for, and shares, its outcome, rather than
+ * repeating the computation. Outcomes are not retained once the request completes.
+ *
+ * The outcome is shared, not copied, unless a copy function is given: without one,
+ * it must be treated as read-only. With one, every request gets its own copy, including
+ * the request that computed the outcome.
+ *
+ * The requests with the same key can also share a cleanup, e.g. the release of their
+ * common input, which is run by the last of them to complete, whether it computed the
+ * outcome or not: see {@link #execute(Object, Supplier, Deadline, Supplier, Runnable)}.
+ *
+ * @param <K> the request key type
+ * @param <V> the outcome type
+ */
+public final class SingleFlight<K, V> {
+
+  // how often a waiting request checks whether its deadline was cancelled
+  private static final long MAX_WAIT_SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+  // the outcome of each request in flight, empty if the outcome is not to be shared
+  private final ConcurrentMap<K, CompletableFuture<Optional<V>>> inFlight =
+      new ConcurrentHashMap<>();
+
+  // the number of requests with each key, in flight or waiting, that share a cleanup
+  private final ConcurrentMap<K, Integer> participants = new ConcurrentHashMap<>();
+
+  private final UnaryOperator<V> share;
+
+  private final LongAdder calls = new LongAdder();
+  private final LongAdder coalesced = new LongAdder();
+
+  public SingleFlight() {
+    this(UnaryOperator.identity());
+  }
+
+  /**
+   * @param share gives each of the requests that share an outcome its own copy of the outcome
+   */
+  public SingleFlight(UnaryOperator<V> share) {
+    this.share = share;
+  }
+
+  /**
+   * Executes the request, unless an identical request is already in flight
+   *
+   * @param key     the request key; a null key disables the coalescing of the request
+   * @param request the request
+   * @return the outcome of the request, or of the identical request in flight
+   */
+  public V execute(K key, Supplier<V> request) {
+    return execute(key, request, Deadline.none(), () -> {
+      throw new CancellationException("Interrupted while waiting for a coalesced request");
+    });
+  }
+
+  /**
+   * Executes the request, unless an identical request is already in flight, in which case
+   * the outcome of that request is awaited until the given deadline.
+   *
+   * An outcome is shared only if the request that computed it did not exceed its own
+   * deadline (nor was cancelled): otherwise, the waiting requests execute the request
+   * themselves, or wait for one of them to do so.
+   *
+   * @param key      the request key; a null key disables the coalescing of the request
+   * @param request  the request
+   * @param deadline the deadline of this request, also used when executing the request
+   * @param expired  the outcome, should the deadline expire while waiting
+   * @return the outcome of the request, or of the identical request in flight
+   */
+  public V execute(K key, Supplier<V> request, Deadline deadline, Supplier<V> expired) {
+    calls.increment();
+    if (key == null) {
+      return request.get();
+    }
+    while (true) {
+      CompletableFuture<Optional<V>> own = new CompletableFuture<>();
+      CompletableFuture<Optional<V>> leader = inFlight.putIfAbsent(key, own);
+      if (leader == null) {
+        return lead(key, own, request, deadline);
+      }
+      Optional<Optional<V>> outcome = await(leader, deadline);
+      if (outcome.isEmpty()) {
+        return expired.get();
+      }
+      if (outcome.get().isPresent()) {
+        coalesced.increment();
+        return share.apply(outcome.get().get());
+      }
+      // the request in flight failed for reasons of its own: try again
+    }
+  }
+
+  /**
+   * Variant of {@link #execute(Object, Supplier, Deadline, Supplier)} for requests that share
+   * a cleanup: the cleanup is run once, by the last of the requests with the same key to
+   * complete, including the requests that retry, or give up on, a request in flight
+   * that did not complete in its own time
+   *
+   * @param cleanup run when no other request with the same key is in flight, or waiting
+   */
+  public V execute(K key, Supplier<V> request, Deadline deadline, Supplier<V> expired,
+      Runnable cleanup) {
+    if (key == null) {
+      try {
+        return execute(null, request, deadline, expired);
+      } finally {
+        cleanup.run();
+      }
+    }
+    participants.merge(key, 1, Integer::sum);
+    try {
+      return execute(key, request, deadline, expired);
+    } finally {
+      leave(key, cleanup);
+    }
+  }
+
+  /**
+   * Runs the cleanup on behalf of a request that will not be executed (e.g. it was rejected),
+   * unless requests with the same key are in flight, in which case the last of them runs it
+   */
+  public void release(K key, Runnable cleanup) {
+    if (key == null) {
+      cleanup.run();
+      return;
+    }
+    participants.merge(key, 1, Integer::sum);
+    leave(key, cleanup);
+  }
+
+  private void leave(K key, Runnable cleanup) {
+    boolean[] last = {false};
+    participants.computeIfPresent(key, (k, n) -> {
+      last[0] = n == 1;
+      return last[0] ? null : n - 1;
+    });
+    if (last[0]) {
+      cleanup.run();
+    }
+  }
+
+  private V lead(K key, CompletableFuture<Optional<V>> own, Supplier<V> request,
+      Deadline deadline) {
+    try {
+      V outcome = request.get();
+      own.complete(deadline.wasExceeded() || deadline.isCancelled()
+          ? Optional.empty()
+          : Optional.ofNullable(outcome));
+      return outcome != null ? share.apply(outcome) : null;
+    } catch (RuntimeException | Error e) {
+      own.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlight.remove(key, own);
+    }
+  }
+
+  /**
+   * @return the outcome of the leader, or empty if the deadline expired first
+   */
+  private Optional<Optional<V>> await(CompletableFuture<Optional<V>> leader,
+      Deadline deadline) {
+    while (!deadline.isExpired()) {
+      long slice = Math.min(deadline.remaining().toNanos(), MAX_WAIT_SLICE_NANOS);
+      try {
+        return Optional.of(leader.get(slice, TimeUnit.NANOSECONDS));
+      } catch (TimeoutException e) {
+        // check the deadline again
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        deadline.cancel();
+      } catch (ExecutionException e) {
+        throw e.getCause() instanceof RuntimeException
+            ? (RuntimeException) e.getCause()
+            : new CompletionException(e.getCause());
+      }
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * @return the number of requests
+   */
+  public long callCount() {
+    return calls.sum();
+  }
+
+  /**
+   * @return the number of requests that shared the outcome of an identical request
+   */
+  public long coalescedCount() {
+    return coalesced.sum();
+  }
+
+  /**
+   * @return the number of distinct requests currently in flight
+   */
+  public int inFlightCount() {
+    return inFlight.size();
+  }
+
+}
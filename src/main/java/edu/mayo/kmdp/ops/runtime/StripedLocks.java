@@ -0,0 +1,120 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.runtime;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * A fixed set of locks, where each key (e.g. the id of a Knowledge Base) is mapped to one lock.
+ *
+ * Operations on the same key are serialized, while operations on different keys
+ * run concurrently, unless the keys happen to share a stripe. The number of stripes
+ * bounds the memory used, regardless of the number of keys.
+ */
+public final class StripedLocks {
+
+  // how often a waiting operation checks whether its deadline was cancelled
+  private static final long MAX_WAIT_SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+  private final ReentrantLock[] stripes;
+  private final int mask;
+
+  private StripedLocks(int stripes) {
+    int n = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+    this.stripes = new ReentrantLock[n];
+    for (int j = 0; j < n; j++) {
+      this.stripes[j] = new ReentrantLock();
+    }
+    this.mask = n - 1;
+  }
+
+  /**
+   * @param stripes the (minimum) number of locks, rounded up to a power of 2
+   */
+  public static StripedLocks of(int stripes) {
+    if (stripes < 1) {
+      throw new IllegalArgumentException(
+          "The number of stripes must be positive, found " + stripes);
+    }
+    return new StripedLocks(stripes);
+  }
+
+  /**
+   * @return locks sized for the number of available processors
+   */
+  public static StripedLocks forProcessors() {
+    return of(Runtime.getRuntime().availableProcessors() * 16);
+  }
+
+  public ReentrantLock lockFor(Object key) {
+    int h = key.hashCode();
+    // spread the hash bits, as the low bits of UUID hashes are not uniform enough
+    h ^= (h >>> 16);
+    return stripes[h & mask];
+  }
+
+  /**
+   * Executes an operation while holding the lock of the given key
+   */
+  public <T> T withLock(Object key, Supplier<T> op) {
+    ReentrantLock lock = lockFor(key);
+    lock.lock();
+    try {
+      return op.get();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Executes an operation while holding the lock of the given key, waiting for the lock
+   * no longer than the deadline allows
+   *
+   * @param deadline the deadline of the operation; a cancellation stops the wait
+   * @param expired  the outcome, should the deadline expire before the lock is acquired
+   */
+  public <T> T withLock(Object key, Deadline deadline, Supplier<T> op, Supplier<T> expired) {
+    ReentrantLock lock = lockFor(key);
+    if (!tryLock(lock, deadline)) {
+      return expired.get();
+    }
+    try {
+      return op.get();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private static boolean tryLock(ReentrantLock lock, Deadline deadline) {
+    while (!deadline.isExpired()) {
+      long slice = Math.min(deadline.remaining().toNanos(), MAX_WAIT_SLICE_NANOS);
+      try {
+        if (lock.tryLock(slice, TimeUnit.NANOSECONDS)) {
+          return true;
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        deadline.cancel();
+      }
+    }
+    return false;
+  }
+
+  public int size() {
+    return stripes.length;
+  }
+
+}
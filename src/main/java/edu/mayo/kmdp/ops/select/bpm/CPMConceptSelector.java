@@ -1,119 +1,469 @@
 package edu.mayo.kmdp.ops.select.bpm;
 
-import static edu.mayo.kmdp.util.JenaUtil.datA;
-import static edu.mayo.kmdp.util.JenaUtil.objA;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
 import static org.omg.spec.api4kp._20200801.AbstractCarrier.ofAst;
 import static org.omg.spec.api4kp._20200801.AbstractCarrier.rep;
 import static org.omg.spec.api4kp._20200801.taxonomy.krlanguage.KnowledgeRepresentationLanguageSeries.OWL_2;
-import static org.omg.spec.api4kp._20200801.taxonomy.krlanguage.KnowledgeRepresentationLanguageSeries.SPARQL_1_1;
 
-import edu.mayo.kmdp.kbase.query.sparql.v1_1.JenaQuery;
 import edu.mayo.kmdp.knowledgebase.KnowledgeBaseProvider;
 import edu.mayo.kmdp.knowledgebase.constructors.dmn.v1_2.DMN12ImportConstructor;
 import edu.mayo.kmdp.knowledgebase.extractors.rdf.SimplePivotExtractor;
 import edu.mayo.kmdp.knowledgebase.flatteners.dmn.v1_2.DMN12ModelFlattener;
 import edu.mayo.kmdp.knowledgebase.selectors.dmn.v1_2.DMN12ConceptSelector;
-import edu.mayo.kmdp.language.parsers.dmn.v1_2.DMN12Parser;
+import edu.mayo.kmdp.ops.cache.BoundedCache;
+import edu.mayo.kmdp.ops.cache.ContentHash;
+import edu.mayo.kmdp.ops.cache.ImportClosures;
+import edu.mayo.kmdp.ops.rdf.CompactGraph;
+import edu.mayo.kmdp.ops.runtime.AdmissionControl;
+import edu.mayo.kmdp.ops.runtime.Deadline;
+import edu.mayo.kmdp.ops.runtime.KnowledgeBaseArena;
+import edu.mayo.kmdp.ops.runtime.SingleFlight;
+import edu.mayo.kmdp.ops.runtime.StripedLocks;
 import edu.mayo.kmdp.util.PropertiesUtil;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.ResultSet;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.rdf.model.Statement;
 import org.apache.jena.vocabulary.RDF;
 import org.apache.jena.vocabulary.RDFS;
 import org.apache.jena.vocabulary.SKOS;
-import org.omg.spec.api4kp._20200801.AbstractCarrier;
 import org.omg.spec.api4kp._20200801.Answer;
 import org.omg.spec.api4kp._20200801.api.knowledgebase.v4.KnowledgeBaseApi;
 import org.omg.spec.api4kp._20200801.api.knowledgebase.v4.server.KnowledgeBaseApiInternal._select;
-import org.omg.spec.api4kp._20200801.datatypes.Bindings;
 import org.omg.spec.api4kp._20200801.id.Pointer;
 import org.omg.spec.api4kp._20200801.services.KnowledgeCarrier;
 
+/**
+ * Selects the concepts annotated in the (DMN) components of a Knowledge Base,
+ * returning a new Knowledge Base with the concepts (and their labels) as a SKOS A-box.
+ *
+ * The selection supports the following parameters (xParams, as a Properties string):
+ * <ul>
+ *   <li>exclude - a comma-separated list of the UUIDs of the components whose concepts
+ *   are not to be selected. The components are still resolved as imports of the others</li>
+ * </ul>
+ */
 public class CPMConceptSelector implements _select {
 
-  // Language
-  DMN12Parser parser;
+  // Compiled once, and executed against each component's concept A-box
+  private static final Query CONCEPT_QUERY = QueryFactory.create(
+      "SELECT ?c ?l "
+          + "WHERE { ?c <" + RDFS.label + "> ?l. }");
 
-  // KB
+  // KB: the provider, owned by the selector, and only accessed through registry(..);
+  // the selections work on private copies of the KBs, in their own workspaces
+  KnowledgeBaseProvider kbase;
   KnowledgeBaseApi kbManager;
-  DMN12ImportConstructor constructor;
+  private final Object kbaseLock = new Object();
 
-  // Reasoning
-  JenaQuery qry;
+  // Concurrency
+  Executor executor;
 
+  // Incremental selection
+  BoundedCache<String, List<Statement>> conceptCache;
+
+  // Read-only selections
+  boolean compactGraphs = false;
+
+  // the selection sets the structure of the (carrier of the) source KB:
+  // serialize the selections on the same KB
+  final StripedLocks kbaseLocks = StripedLocks.forProcessors();
+
+  AdmissionControl admission = AdmissionControl.unbounded();
+
+  // Coalescing of concurrent, identical selections
+  SingleFlight<List<Object>, Answer<Model>> inFlight;
+
+  /**
+   * @param kbase the provider of the Knowledge Bases to select from, and of the resulting
+   *              Knowledge Bases. The provider is owned by the selector, which serializes
+   *              the accesses to it: its Knowledge Bases are to be accessed through
+   *              {@link #initKnowledgeBase(KnowledgeCarrier, String)},
+   *              {@link #getKnowledgeBaseManifestation(Pointer)} and
+   *              {@link #releaseKnowledgeBase(Pointer)}
+   */
   public CPMConceptSelector(KnowledgeBaseProvider kbase) {
     init(kbase);
   }
 
+  /**
+   * Selects the concepts of the components of a composite concurrently, using the given executor.
+   * A null executor restores the sequential behavior.
+   */
+  public CPMConceptSelector withParallelism(Executor executor) {
+    this.executor = executor;
+    return this;
+  }
+
+  /**
+   * Retains the concepts selected from each component, so that subsequent selections only
+   * process the components that changed version, or import a component that did.
+   *
+   * @param maxComponents the number of components whose concepts are retained, least
+   *                      recently used first out. Zero disables the incremental mode
+   */
+  public CPMConceptSelector withIncrementalSelection(long maxComponents) {
+    this.conceptCache = maxComponents > 0 ? BoundedCache.lru(maxComponents) : null;
+    return this;
+  }
+
+  /**
+   * Freezes the selected concepts into a {@link CompactGraph}, once per selection, so that
+   * the resulting Knowledge Bases are smaller, and faster to query repeatedly. The A-boxes of
+   * the components, which are queried once, are not frozen. Coalesced selections share the
+   * frozen concepts, rather than copying them. The resulting Knowledge Bases are read-only.
+   */
+  public CPMConceptSelector withCompactGraphs(boolean compactGraphs) {
+    this.compactGraphs = compactGraphs;
+    return this;
+  }
+
+  /**
+   * Bounds the number of concurrent (and waiting) selections, and gives each selection
+   * a deadline, checked before each component is processed. Null admits all the selections.
+   */
+  public CPMConceptSelector withAdmissionControl(AdmissionControl admission) {
+    this.admission = admission != null ? admission : AdmissionControl.unbounded();
+    return this;
+  }
+
+  /**
+   * Lets concurrent, identical selections (same Knowledge Base, version, select definition and
+   * parameters) share the computation of the first one. Each selection still gets a resulting
+   * Knowledge Base of its own, initialized from its own copy of the selected concepts
+   * (or from the shared concepts, if frozen).
+   * Coalesced selections are admitted like any other, and wait for the first one until their
+   * own deadline: should the first one not complete before its deadline, they retry.
+   */
+  public CPMConceptSelector withRequestCoalescing(boolean coalesce) {
+    this.inFlight = coalesce
+        ? new SingleFlight<>(ans -> ans.map(m -> m.getGraph() instanceof CompactGraph
+            ? m
+            : ModelFactory.createDefaultModel().add(m)))
+        : null;
+    return this;
+  }
+
+  /**
+   * @return the coalescing statistics, if coalescing is enabled
+   */
+  public Optional<SingleFlight<List<Object>, Answer<Model>>> getRequestCoalescing() {
+    return Optional.ofNullable(inFlight);
+  }
+
   private void init(KnowledgeBaseProvider kbase) {
-    // Language
-    parser = new DMN12Parser();
     // KB
-    kbManager = KnowledgeBaseApi.newInstance(
-        kbase
-            .withNamedSelector(DMN12ConceptSelector::new)
-            .withNamedExtractor(SimplePivotExtractor::new)
-            .withNamedFlattener(DMN12ModelFlattener::new));
-    constructor = new DMN12ImportConstructor(kbManager);
-    // Reasoning
-    qry = new JenaQuery(kbManager);
+    this.kbase = kbase
+        .withNamedSelector(DMN12ConceptSelector::new)
+        .withNamedExtractor(SimplePivotExtractor::new)
+        .withNamedFlattener(DMN12ModelFlattener::new);
+    kbManager = KnowledgeBaseApi.newInstance(this.kbase);
+  }
+
+  /**
+   * @return a new Knowledge Base manager, for the intermediate Knowledge Bases of one selection
+   */
+  private KnowledgeBaseApi newWorkspace() {
+    return KnowledgeBaseApi.newInstance(new KnowledgeBaseProvider(null)
+        .withNamedSelector(DMN12ConceptSelector::new)
+        .withNamedExtractor(SimplePivotExtractor::new)
+        .withNamedFlattener(DMN12ModelFlattener::new));
+  }
+
+  /**
+   * Executes an operation on the Knowledge Base provider, excluding the other threads
+   */
+  private <T> T registry(Supplier<T> op) {
+    synchronized (kbaseLock) {
+      return op.get();
+    }
+  }
+
+  /**
+   * Adds a Knowledge Base to select from
+   */
+  public Answer<Pointer> initKnowledgeBase(KnowledgeCarrier kc, String xParams) {
+    return registry(() -> kbManager.initKnowledgeBase(kc, xParams));
+  }
+
+  /**
+   * @return the content of a Knowledge Base, e.g. the concepts of a selection
+   */
+  public Answer<KnowledgeCarrier> getKnowledgeBaseManifestation(Pointer kb) {
+    return registry(() -> kbManager.getKnowledgeBaseManifestation(kb.getUuid(),
+        kb.getVersionTag()));
+  }
+
+  /**
+   * Removes a Knowledge Base, e.g. a selection that is no longer needed
+   */
+  public void releaseKnowledgeBase(Pointer kb) {
+    registry(() -> kbManager.deleteKnowledgeBase(kb.getUuid()));
   }
 
 
   @Override
   public Answer<Pointer> select(UUID kbaseId, String versionTag, KnowledgeCarrier selectDefinition,
       String xParams) {
+    return admission.admit(deadline ->
+        coalesced(kbaseId, versionTag, selectDefinition, xParams, deadline)
+            .map(m -> ofAst(m, rep(OWL_2)))
+            .flatMap(m -> registry(() -> kbManager.initKnowledgeBase(m, xParams))));
+  }
+
+  private Answer<Model> coalesced(UUID kbaseId, String versionTag,
+      KnowledgeCarrier selectDefinition, String xParams, Deadline deadline) {
+    Supplier<Answer<Model>> selection = () -> kbaseLocks.withLock(kbaseId, deadline,
+        () -> doSelect(kbaseId, versionTag, selectDefinition, xParams, deadline)
+            .map(m -> compactGraphs ? CompactGraph.freeze(m) : m),
+        () -> deadline.exceeded("lock"));
+    return inFlight != null
+        ? inFlight.execute(getRequestKey(kbaseId, versionTag, selectDefinition, xParams),
+            selection, deadline, () -> deadline.exceeded("coalesced"))
+        : selection.get();
+  }
+
+  /**
+   * @return the key of a selection request, or null if the select definition
+   * is not serialized, and thus cannot be compared
+   */
+  private List<Object> getRequestKey(UUID kbaseId, String versionTag,
+      KnowledgeCarrier selectDefinition, String xParams) {
+    if (selectDefinition == null) {
+      return Arrays.asList(kbaseId, versionTag, null, xParams);
+    }
+    return ContentHash.of(selectDefinition)
+        .map(hash -> Arrays.<Object>asList(kbaseId, versionTag, hash, xParams))
+        .orElse(null);
+  }
 
-    constructor.getKnowledgeBaseStructure(kbaseId, versionTag, xParams)
-        .flatMap(struct -> kbManager
-            .setKnowledgeBaseStructure(kbaseId, versionTag, struct));
+  /**
+   * @return the concepts selected from the components of the Knowledge Base
+   */
+  private Answer<Model> doSelect(UUID kbaseId, String versionTag,
+      KnowledgeCarrier selectDefinition, String xParams, Deadline deadline) {
+    // The source KB is copied into a private workspace, to be structured, and each component
+    // is extracted, with its imports. The extracted components are then flattened and selected
+    // from in workspaces of their own, so that they can be processed concurrently: all the
+    // intermediate KBs are released once the concepts have been collected
+    KnowledgeBaseApi workspace = newWorkspace();
+    try (KnowledgeBaseArena arena = KnowledgeBaseArena.open(workspace::deleteKnowledgeBase)) {
+      Answer<Pointer> source =
+          registry(() -> kbManager.getKnowledgeBaseManifestation(kbaseId, versionTag))
+              .flatMap(kc -> workspace.initKnowledgeBase(kc, xParams))
+              .map(arena::track);
+      if (source.isFailure()) {
+        return source.map(failed -> ModelFactory.createDefaultModel());
+      }
+      UUID sourceId = source.get().getUuid();
+      String sourceVersion = source.get().getVersionTag();
 
-    Answer<Model> model = kbManager.getKnowledgeBaseComponents(kbaseId, versionTag, xParams)
-        .flatList(Pointer.class,
-            ptr -> getConceptsForComponent(kbaseId, versionTag,
-                ptr, selectDefinition, xParams))
-        .flatOpt(list -> ((List<Model>) list).stream().reduce(Model::add));
+      Answer<KnowledgeCarrier> struct = new DMN12ImportConstructor(workspace)
+          .getKnowledgeBaseStructure(sourceId, sourceVersion, xParams);
+      struct.flatMap(s -> workspace
+          .setKnowledgeBaseStructure(sourceId, sourceVersion, s));
+      Answer<KnowledgeCarrier> structured =
+          workspace.getKnowledgeBaseManifestation(sourceId, sourceVersion);
+      if (structured.isFailure()) {
+        return structured.map(failed -> ModelFactory.createDefaultModel());
+      }
 
-    return model
-        .map(m -> ofAst(m, rep(OWL_2)))
-        .flatMap(m -> kbManager.initKnowledgeBase(m, xParams));
+      Set<String> excluded = getExclusions(xParams);
+      Function<Pointer, String> cacheKeys = conceptCache != null
+          ? getCacheKeys(struct, selectDefinition)
+          : ptr -> null;
+
+      return workspace
+          .getKnowledgeBaseComponents(sourceId, sourceVersion, xParams)
+          .flatMap(ptrs -> collectConcepts(ptrs, ptr -> {
+            if (excluded.contains(ptr.getUuid().toString())) {
+              return () -> Answer.of(Collections.<Statement>emptyList());
+            }
+            String key = cacheKeys.apply(ptr);
+            Optional<List<Statement>> hit = key != null ? conceptCache.get(key) : Optional.empty();
+            if (hit.isPresent()) {
+              return () -> Answer.of(hit.get());
+            }
+            // focus on the specific component (model), with its imports: the extraction
+            // is done here, in the workspace of the selection, and the rest in a workspace
+            // of its own, which only needs the extracted models
+            String stage = "select " + ptr.getUuid();
+            Answer<KnowledgeCarrier> extracted = deadline.check(stage, ptr)
+                .flatMap(p -> workspace.extract(sourceId, sourceVersion, p.getUuid(), null))
+                .map(arena::track)
+                .flatMap(p -> workspace
+                    .getKnowledgeBaseManifestation(p.getUuid(), p.getVersionTag()));
+            return () -> extracted
+                .flatMap(kc -> deadline.check(stage, kc))
+                .flatMap(kc -> getConceptsForComponent(kc, selectDefinition, xParams))
+                .map(concepts -> retain(key, concepts));
+          }));
+    }
   }
 
-  private Answer<Model> getConceptsForComponent(UUID kbaseId, String versionTag,
-      Pointer componentId, KnowledgeCarrier selectDefinition, String xParams) {
-    boolean excluded = PropertiesUtil.parse(xParams)
+  /**
+   * Keys the concepts of a component by the version of the component and the versions of its
+   * (transitive) imports, as well as the select definition. Components whose imports
+   * cannot be determined, or definitions that are not serialized, are not cached.
+   */
+  private Function<Pointer, String> getCacheKeys(Answer<KnowledgeCarrier> struct,
+      KnowledgeCarrier selectDefinition) {
+    Optional<String> defKey = selectDefinition == null
+        ? Optional.of("")
+        : ContentHash.of(selectDefinition).map(ContentHash::getDigest);
+    Answer<ImportClosures> closures = struct
+        .flatOpt(s -> s.as(Model.class))
+        .map(ImportClosures::of);
+    if (defKey.isEmpty() || closures.isFailure()) {
+      return ptr -> null;
+    }
+    ImportClosures imports = closures.get();
+    // components the struct does not describe have unknown imports, and are not cached
+    return ptr -> ptr.getVersionId() == null || !imports.contains(ptr.getVersionId().toString())
+        ? null
+        : ptr.getVersionId() + "|" + imports.fingerprint(ptr.getVersionId().toString())
+            + "|" + defKey.get();
+  }
+
+  private List<Statement> retain(String key, List<Statement> concepts) {
+    if (key != null) {
+      conceptCache.put(key, Collections.unmodifiableList(concepts));
+    }
+    return concepts;
+  }
+
+  /**
+   * @param xParams the selection parameters
+   * @return the ids of the components to be excluded from the selection (the 'exclude' parameter)
+   */
+  private Set<String> getExclusions(String xParams) {
+    return PropertiesUtil.parse(xParams)
         .flatMap(props -> PropertiesUtil.pString("exclude", props))
-        .map(excl -> componentId.getUuid().toString().equals(excl))
-        .orElse(false);
-    if (excluded) {
-      return Answer.of(ModelFactory.createDefaultModel());
+        .map(excl -> Arrays.stream(excl.split(","))
+            .map(String::trim)
+            .collect(toSet()))
+        .orElse(Collections.emptySet());
+  }
+
+  /**
+   * Collects the concepts of each component into a single graph, processing the components
+   * concurrently if an executor has been configured.
+   *
+   * @param components      the components
+   * @param conceptSelector prepares the selection of the concepts of a component, on the
+   *                        calling thread, returning the remainder of the selection, which
+   *                        can be run on any thread
+   */
+  private Answer<Model> collectConcepts(List<Pointer> components,
+      Function<Pointer, Supplier<Answer<List<Statement>>>> conceptSelector) {
+    Model target = ModelFactory.createDefaultModel();
+    if (executor == null) {
+      for (Pointer ptr : components) {
+        Answer<List<Statement>> concepts = conceptSelector.apply(ptr).get();
+        if (concepts.isFailure()) {
+          return concepts.map(failed -> target);
+        }
+        target.add(concepts.get());
+      }
+      return Answer.of(target);
+    }
+
+    // once a component fails, the components not yet started are skipped
+    AtomicReference<Answer<List<Statement>>> failure = new AtomicReference<>();
+    List<CompletableFuture<Answer<List<Statement>>>> pending = new ArrayList<>(components.size());
+    for (Pointer ptr : components) {
+      if (failure.get() != null) {
+        break;
+      }
+      Supplier<Answer<List<Statement>>> selection = conceptSelector.apply(ptr);
+      pending.add(CompletableFuture.supplyAsync(() -> {
+        if (failure.get() != null) {
+          return Answer.of(Collections.<Statement>emptyList());
+        }
+        Answer<List<Statement>> concepts;
+        try {
+          concepts = selection.get();
+        } catch (RuntimeException e) {
+          concepts = Answer.failed(e);
+        }
+        if (concepts.isFailure()) {
+          failure.compareAndSet(null, concepts);
+        }
+        return concepts;
+      }, executor));
+    }
+    // no component is still being processed (in the workspaces of this selection)
+    // when the selection returns, whether it succeeds or not
+    CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).join();
+    if (failure.get() != null) {
+      return failure.get().map(failed -> target);
+    }
+    pending.forEach(concepts -> target.add(concepts.join().get()));
+    return Answer.of(target);
+  }
+
+  /**
+   * @param component the component, with its imports, as extracted from the source KB
+   * @return the concepts annotated in the component, or its imports
+   */
+  private Answer<List<Statement>> getConceptsForComponent(KnowledgeCarrier component,
+      KnowledgeCarrier selectDefinition, String xParams) {
+    KnowledgeBaseApi workspace = newWorkspace();
+    try (KnowledgeBaseArena arena = KnowledgeBaseArena.open(workspace::deleteKnowledgeBase)) {
+      return workspace
+          .initKnowledgeBase(component, xParams)
+          .map(arena::track)
+          // resolve all imports
+          .flatMap(ptr -> workspace.flatten(ptr.getUuid(), ptr.getVersionTag()))
+          .map(arena::track)
+          // select all the annotations, returning the concepts as a SKOS A-box
+          .flatMap(ptr -> workspace.select(ptr.getUuid(), ptr.getVersionTag(), selectDefinition))
+          .map(arena::track)
+          .flatMap(ptr -> workspace
+              .getKnowledgeBaseManifestation(ptr.getUuid(), ptr.getVersionTag()))
+          .flatOpt(kc -> kc.as(Model.class))
+          // query for the concept id/label
+          .map(this::formulateConcepts);
+    }
+  }
+
+
+  private List<Statement> formulateConcepts(Model conceptBox) {
+    List<Statement> concepts = new ArrayList<>();
+    try (QueryExecution exec = QueryExecutionFactory.create(CONCEPT_QUERY, conceptBox)) {
+      ResultSet results = exec.execSelect();
+      while (results.hasNext()) {
+        QuerySolution sol = results.next();
+        Resource c = ResourceFactory.createResource(sol.get("c").toString());
+        RDFNode l = sol.get("l");
+        concepts.add(ResourceFactory.createStatement(c, RDF.type, SKOS.Concept));
+        concepts.add(ResourceFactory.createStatement(c, RDFS.label,
+            ResourceFactory.createPlainLiteral(
+                l.isLiteral() ? l.asLiteral().getLexicalForm() : l.toString())));
+      }
     }
-    return kbManager
-        // focus on the specific component (model)
-        .extract(kbaseId, versionTag, componentId.getUuid(), null)
-        // resolve all imports
-        .flatMap(ptr -> kbManager.flatten(ptr.getUuid(), ptr.getVersionTag()))
-        // select all the annotations, returning the concepts as a SKOS A-box
-        .flatMap(ptr -> kbManager.select(ptr.getUuid(), ptr.getVersionTag(), selectDefinition))
-        // query for the concept id/label
-        .flatMap(ptr -> qry.askQuery(ptr.getUuid(), ptr.getVersionTag(),
-            AbstractCarrier.of(
-                "SELECT ?c ?l "
-                    + "WHERE { ?c <" + RDFS.label + "> ?l. }",
-                rep(SPARQL_1_1)),
-            null))
-        .mapList(Bindings.class, this::formulateConcept)
-        .flatOpt(list -> ((List<Model>)list).stream().reduce(Model::add));
-  }
-
-
-  private Model formulateConcept(Bindings<String, Object> bind) {
-    Model m = ModelFactory.createDefaultModel();
-    String c = bind.get("c").toString();
-    m.add(objA(c, RDF.type.getURI(), SKOS.Concept.getURI()));
-    m.add(datA(c, RDFS.label.getURI(), bind.get("l").toString()));
-    return m;
+    return concepts;
   }
 
 }
@@ -6,8 +6,15 @@ import static org.omg.spec.api4kp._20200801.taxonomy.krlanguage.KnowledgeReprese
 
 import edu.mayo.kmdp.knowledgebase.KnowledgeBaseProvider;
 import edu.mayo.kmdp.knowledgebase.selectors.fhir.stu3.FHIRQuestionnaireSelector;
+import edu.mayo.kmdp.ops.runtime.AdmissionControl;
+import edu.mayo.kmdp.ops.runtime.Deadline;
+import edu.mayo.kmdp.ops.runtime.KnowledgeBaseArena;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
 import javax.inject.Inject;
 import org.hl7.fhir.dstu3.model.Questionnaire;
 import org.hl7.fhir.dstu3.model.ValueSet;
@@ -20,8 +27,27 @@ import org.omg.spec.api4kp._20200801.services.KnowledgeCarrier;
 
 public class MultiQuestionnaireConceptSelector implements _select {
 
+  /**
+   * Extension that references a Questionnaire a selected concept was found in
+   */
+  public static final String SOURCE_QUESTIONNAIRE_EXT =
+      "http://kmdp.mayo.edu/fhir/StructureDefinition/source-questionnaire";
+
+  // KB: the shared manager, only accessed through registry(..);
+  // the Questionnaires are selected from in private workspaces
   KnowledgeBaseApiInternal kbManager;
 
+  boolean trackSources = false;
+
+  Executor executor;
+
+  AdmissionControl admission = AdmissionControl.unbounded();
+
+  /**
+   * @param kbManager the manager of the Knowledge Bases to select from, and of the resulting
+   *                  Knowledge Bases. The selector only accesses the manager while holding its
+   *                  monitor: other threads that share the manager should do the same
+   */
   @Inject
   public MultiQuestionnaireConceptSelector(KnowledgeBaseApiInternal kbManager) {
     // This KBManager needs a FHIRQuestionnaireSelector
@@ -33,39 +59,147 @@ public class MultiQuestionnaireConceptSelector implements _select {
     this.kbManager = kbManager;
   }
 
+  /**
+   * Records, for each selected concept, the Questionnaire(s) it was found in,
+   * using the {@link #SOURCE_QUESTIONNAIRE_EXT} extension
+   */
+  public MultiQuestionnaireConceptSelector withSourceTracking(boolean trackSources) {
+    this.trackSources = trackSources;
+    return this;
+  }
+
+  /**
+   * Selects the concepts of the Questionnaires concurrently, on the given executor.
+   * A null executor restores the sequential selection.
+   *
+   * Note that each Questionnaire is still registered as a (temporary) Knowledge Base, since
+   * the {@link FHIRQuestionnaireSelector} is only available through the Knowledge Base API:
+   * the registration is in a private workspace of the task, rather than in the shared manager,
+   * and is released as soon as the concepts have been selected.
+   */
+  public MultiQuestionnaireConceptSelector withParallelSelection(Executor executor) {
+    this.executor = executor;
+    return this;
+  }
+
+  /**
+   * Bounds the number of concurrent (and waiting) selections, and gives each selection
+   * a deadline, checked before each Questionnaire is processed. Null admits all the selections.
+   */
+  public MultiQuestionnaireConceptSelector withAdmissionControl(AdmissionControl admission) {
+    this.admission = admission != null ? admission : AdmissionControl.unbounded();
+    return this;
+  }
+
   @Override
   public Answer<Pointer> select(UUID kbaseId, String versionTag, KnowledgeCarrier selectDefinition,
       String xParams) {
+    return admission.admit(deadline -> select(kbaseId, versionTag, selectDefinition, deadline));
+  }
 
-    return kbManager.getKnowledgeBaseManifestation(kbaseId, versionTag)
+  private Answer<Pointer> select(UUID kbaseId, String versionTag,
+      KnowledgeCarrier selectDefinition, Deadline deadline) {
+    return registry(() -> kbManager.getKnowledgeBaseManifestation(kbaseId, versionTag))
         .map(kb -> kb.componentsAs(Questionnaire.class).collect(toList()))
-        .flatList(Questionnaire.class, q -> selectConcepts(q, selectDefinition))
-        // TODO FIXME define 'flatStream'
-        .map(List::stream)
-        .reduce(ValueSet.class, this::merge)
+        .flatMap(qs -> executor != null
+            ? selectConcurrentlyAndMerge(qs, selectDefinition, deadline)
+            : selectAndMerge(qs, selectDefinition, deadline))
+        .flatMap(vs -> deadline.check("merge", vs))
         .map(vs -> AbstractCarrier.ofAst(vs, rep(FHIR_STU3)))
-        .flatMap(m -> kbManager.initKnowledgeBase(m, null));
+        .flatMap(m -> registry(() -> kbManager.initKnowledgeBase(m, null)));
   }
 
-  private ValueSet merge(ValueSet v1, ValueSet v2) {
-    ValueSet v3 = new ValueSet();
-    v3.getExpansion().getContains().addAll(v1.getExpansion().getContains());
-    v3.getExpansion().getContains().addAll(v2.getExpansion().getContains());
-    return v3;
+  /**
+   * @return a new Knowledge Base manager, for the per-Questionnaire Knowledge Bases
+   */
+  private static KnowledgeBaseApiInternal newWorkspace() {
+    return new KnowledgeBaseProvider(null)
+        .withNamedSelector(FHIRQuestionnaireSelector::new);
   }
 
-  private Answer<ValueSet> selectConcepts(Questionnaire questionnaire, KnowledgeCarrier selectDef) {
-    return kbManager
+  /**
+   * Executes an operation on the shared Knowledge Base manager, excluding the other threads
+   */
+  private <T> T registry(Supplier<T> op) {
+    synchronized (kbManager) {
+      return op.get();
+    }
+  }
+
+  /**
+   * Selects the concepts from each Questionnaire, merging them into a single
+   * (de-duplicated) ValueSet as they are selected
+   */
+  private Answer<ValueSet> selectAndMerge(List<Questionnaire> questionnaires,
+      KnowledgeCarrier selectDefinition, Deadline deadline) {
+    // Release the per-questionnaire KBs once the concepts have been merged
+    KnowledgeBaseApiInternal workspace = newWorkspace();
+    try (KnowledgeBaseArena arena = KnowledgeBaseArena.open(workspace::deleteKnowledgeBase)) {
+      ValueSetAccumulator acc = new ValueSetAccumulator(trackSources);
+      for (Questionnaire q : questionnaires) {
+        if (deadline.isExpired()) {
+          return deadline.exceeded("select " + q.getId());
+        }
+        Answer<ValueSet> concepts = selectConcepts(workspace, q, selectDefinition, arena);
+        if (concepts.isFailure()) {
+          return concepts;
+        }
+        acc.add(q, concepts.get());
+      }
+      return Answer.of(acc.toValueSet());
+    }
+  }
+
+  /**
+   * Selects the concepts of each Questionnaire concurrently, then merges them
+   * in the order of the Questionnaires
+   */
+  private Answer<ValueSet> selectConcurrentlyAndMerge(List<Questionnaire> questionnaires,
+      KnowledgeCarrier selectDefinition, Deadline deadline) {
+    List<CompletableFuture<Answer<ValueSet>>> pending = questionnaires.stream()
+        .map(q -> CompletableFuture.supplyAsync(
+            () -> selectConcepts(q, selectDefinition, deadline), executor))
+        .collect(toList());
+    ValueSetAccumulator acc = new ValueSetAccumulator(trackSources);
+    try {
+      for (int j = 0; j < questionnaires.size(); j++) {
+        Answer<ValueSet> concepts = pending.get(j).join();
+        if (concepts.isFailure()) {
+          return concepts;
+        }
+        acc.add(questionnaires.get(j), concepts.get());
+      }
+    } catch (CompletionException e) {
+      return Answer.failed(e.getCause());
+    }
+    return Answer.of(acc.toValueSet());
+  }
+
+  private Answer<ValueSet> selectConcepts(Questionnaire questionnaire,
+      KnowledgeCarrier selectDef, Deadline deadline) {
+    if (deadline.isExpired()) {
+      return deadline.exceeded("select " + questionnaire.getId());
+    }
+    KnowledgeBaseApiInternal workspace = newWorkspace();
+    try (KnowledgeBaseArena arena = KnowledgeBaseArena.open(workspace::deleteKnowledgeBase)) {
+      return selectConcepts(workspace, questionnaire, selectDef, arena);
+    }
+  }
+
+  private Answer<ValueSet> selectConcepts(KnowledgeBaseApiInternal manager,
+      Questionnaire questionnaire, KnowledgeCarrier selectDef, KnowledgeBaseArena arena) {
+    return manager
         .initKnowledgeBase(AbstractCarrier.ofAst(questionnaire, rep(FHIR_STU3)), null)
+        .map(arena::track)
         .flatMap(
-            ptr -> kbManager.select(
+            ptr -> manager.select(
                 ptr.getUuid(),
                 ptr.getVersionTag(),
                 selectDef))
+        .map(arena::track)
         .flatMap(
-            ptr -> kbManager.getKnowledgeBaseManifestation(ptr.getUuid(), ptr.getVersionTag()))
+            ptr -> manager.getKnowledgeBaseManifestation(ptr.getUuid(), ptr.getVersionTag()))
         .map(kc -> kc.as(ValueSet.class).orElseThrow());
   }
 
-
 }
@@ -0,0 +1,78 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.select.fhir.stu3;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import org.hl7.fhir.dstu3.model.Questionnaire;
+import org.hl7.fhir.dstu3.model.Reference;
+import org.hl7.fhir.dstu3.model.ValueSet;
+import org.hl7.fhir.dstu3.model.ValueSet.ValueSetExpansionContainsComponent;
+
+/**
+ * Merges the concepts selected from several Questionnaires into a single ValueSet expansion,
+ * in one pass, de-duplicating the concepts by system and code.
+ *
+ * Optionally, records the Questionnaires that contributed each concept, as extensions
+ * of the expansion entries.
+ */
+class ValueSetAccumulator {
+
+  private final boolean trackSources;
+
+  private final Map<String, ValueSetExpansionContainsComponent> concepts = new LinkedHashMap<>();
+  private final Map<String, Set<String>> sources = new LinkedHashMap<>();
+
+  ValueSetAccumulator(boolean trackSources) {
+    this.trackSources = trackSources;
+  }
+
+  ValueSetAccumulator add(Questionnaire source, ValueSet selected) {
+    String sourceRef = trackSources ? referenceTo(source) : null;
+    for (ValueSetExpansionContainsComponent concept : selected.getExpansion().getContains()) {
+      String key = concept.getSystem() + "|" + concept.getCode();
+      concepts.putIfAbsent(key, concept);
+      if (trackSources) {
+        sources.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(sourceRef);
+      }
+    }
+    return this;
+  }
+
+  ValueSet toValueSet() {
+    ValueSet vs = new ValueSet();
+    concepts.forEach((key, concept) -> {
+      ValueSetExpansionContainsComponent entry = concept;
+      if (trackSources) {
+        // do not alter the entries of the source ValueSets
+        entry = concept.copy();
+        for (String ref : sources.get(key)) {
+          entry.addExtension(MultiQuestionnaireConceptSelector.SOURCE_QUESTIONNAIRE_EXT,
+              new Reference(ref));
+        }
+      }
+      vs.getExpansion().addContains(entry);
+    });
+    return vs;
+  }
+
+  private static String referenceTo(Questionnaire q) {
+    return q.hasUrl()
+        ? q.getUrl()
+        : "Questionnaire/" + q.getIdElement().getIdPart();
+  }
+
+}
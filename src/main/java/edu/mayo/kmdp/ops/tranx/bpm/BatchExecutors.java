@@ -0,0 +1,55 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.tranx.bpm;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Executors suitable for batch transformations,
+ * see {@link CcpmToPlanDefPipeline#applyNamedTransforms}
+ */
+public final class BatchExecutors {
+
+  private BatchExecutors() {
+    // static factories only
+  }
+
+  /**
+   * @param parallelism the target parallelism
+   * @return a work-stealing pool, with the given parallelism
+   */
+  public static ExecutorService forkJoin(int parallelism) {
+    return new ForkJoinPool(parallelism);
+  }
+
+  /**
+   * Returns an executor that starts a new virtual thread for each task, when supported
+   * by the runtime (Java 21+). Falls back to a work-stealing pool otherwise.
+   *
+   * @return a virtual-thread-per-task executor, or a work-stealing pool
+   */
+  public static ExecutorService virtualThreads() {
+    try {
+      return (ExecutorService) Executors.class
+          .getMethod("newVirtualThreadPerTaskExecutor")
+          .invoke(null);
+    } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+      return Executors.newWorkStealingPool();
+    }
+  }
+
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.tranx.bpm;
+
+import static java.util.stream.Collectors.toList;
+
+import org.hl7.fhir.dstu3.model.Resource;
+import org.omg.spec.api4kp._20200801.services.CompositeKnowledgeCarrier;
+import org.omg.spec.api4kp._20200801.services.KnowledgeCarrier;
+
+/**
+ * Copies the carriers retained across requests, since the downstream stages
+ * (e.g. the PlanDefinition flattener, binder and weaver) rewrite the FHIR resources
+ * they are given.
+ *
+ * FHIR resources are deep-copied; other expressions (e.g. the DMN/CMMN models, which are
+ * not rewritten by the pipeline) are shared.
+ */
+final class CarrierCopies {
+
+  private CarrierCopies() {
+    // static functions only
+  }
+
+  static KnowledgeCarrier copy(KnowledgeCarrier kc) {
+    if (kc instanceof CompositeKnowledgeCarrier) {
+      CompositeKnowledgeCarrier ckc = (CompositeKnowledgeCarrier) kc;
+      return new CompositeKnowledgeCarrier()
+          .withAssetId(ckc.getAssetId())
+          .withArtifactId(ckc.getArtifactId())
+          .withLevel(ckc.getLevel())
+          .withRepresentation(ckc.getRepresentation())
+          .withLabel(ckc.getLabel())
+          .withRootId(ckc.getRootId())
+          .withStruct(ckc.getStruct())
+          .withComponent(ckc.componentList().stream()
+              .map(CarrierCopies::copy)
+              .collect(toList()));
+    }
+    Object expr = kc.getExpression();
+    return new KnowledgeCarrier()
+        .withAssetId(kc.getAssetId())
+        .withArtifactId(kc.getArtifactId())
+        .withLevel(kc.getLevel())
+        .withRepresentation(kc.getRepresentation())
+        .withLabel(kc.getLabel())
+        .withExpression(expr instanceof Resource ? ((Resource) expr).copy() : expr);
+  }
+
+}
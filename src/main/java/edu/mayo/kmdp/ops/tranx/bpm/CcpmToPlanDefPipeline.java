@@ -13,9 +13,14 @@
  */
 package edu.mayo.kmdp.ops.tranx.bpm;
 
-import static java.util.Arrays.asList;
+import static edu.mayo.kmdp.ops.tranx.bpm.StageCache.Stage.FLATTEN;
+import static edu.mayo.kmdp.ops.tranx.bpm.StageCache.Stage.PARSE;
+import static edu.mayo.kmdp.ops.tranx.bpm.StageCache.Stage.TRANSLATE;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
 import static org.omg.spec.api4kp._20200801.AbstractCarrier.rep;
 import static org.omg.spec.api4kp._20200801.AbstractCompositeCarrier.ofMixedAnonymousComposite;
+import static org.omg.spec.api4kp._20200801.AbstractCompositeCarrier.ofUniformAnonymousComposite;
 import static org.omg.spec.api4kp._20200801.services.transrepresentation.ModelMIMECoder.encode;
 import static org.omg.spec.api4kp._20200801.taxonomy.krlanguage.KnowledgeRepresentationLanguageSeries.CMMN_1_1;
 import static org.omg.spec.api4kp._20200801.taxonomy.krlanguage.KnowledgeRepresentationLanguageSeries.FHIR_STU3;
@@ -25,23 +30,47 @@ import static org.omg.spec.api4kp._20200801.taxonomy.parsinglevel.ParsingLevelSe
 
 import edu.mayo.kmdp.knowledgebase.KnowledgeBaseProvider;
 import edu.mayo.kmdp.knowledgebase.binders.fhir.stu3.PlanDefDataShapeBinder;
-import edu.mayo.kmdp.knowledgebase.flatteners.dmn.v1_2.DMN12ModelFlattener;
-import edu.mayo.kmdp.knowledgebase.flatteners.fhir.stu3.PlanDefinitionFlattener;
 import edu.mayo.kmdp.knowledgebase.selectors.fhir.stu3.PlanDefSelector;
 import edu.mayo.kmdp.knowledgebase.weavers.fhir.stu3.PlanDefTerminologyWeaver;
-import edu.mayo.kmdp.language.LanguageDeSerializer;
-import edu.mayo.kmdp.language.TransrepresentationExecutor;
-import edu.mayo.kmdp.language.parsers.cmmn.v1_1.CMMN11Parser;
-import edu.mayo.kmdp.language.parsers.dmn.v1_2.DMN12Parser;
-import edu.mayo.kmdp.language.translators.cmmn.v1_1.stu3.CmmnToPlanDefTranslator;
-import edu.mayo.kmdp.language.translators.dmn.v1_2.DmnToPlanDefTranslator;
+import edu.mayo.kmdp.ops.cache.ImportClosures;
+import edu.mayo.kmdp.ops.cache.LexiconCache;
+import edu.mayo.kmdp.ops.metrics.OperationMetrics;
+import edu.mayo.kmdp.ops.runtime.AdmissionControl;
+import edu.mayo.kmdp.ops.runtime.Deadline;
+import edu.mayo.kmdp.ops.runtime.KnowledgeBaseArena;
+import edu.mayo.kmdp.ops.runtime.OperatorRegistry;
+import edu.mayo.kmdp.ops.runtime.SingleFlight;
+import edu.mayo.kmdp.ops.runtime.StripedLocks;
+import edu.mayo.kmdp.ops.tranx.bpm.StageCache.SourceKey;
+import edu.mayo.kmdp.ops.tranx.bpm.StageCache.Stage;
+import java.io.OutputStream;
 import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
+import org.apache.jena.rdf.model.Model;
 import org.apache.jena.vocabulary.SKOS;
 import org.omg.spec.api4kp._20200801.Answer;
 import org.omg.spec.api4kp._20200801.api.inference.v4.server.ReasoningApiInternal._askQuery;
@@ -52,6 +81,7 @@ import org.omg.spec.api4kp._20200801.api.repository.asset.v4.KnowledgeAssetCatal
 import org.omg.spec.api4kp._20200801.api.repository.asset.v4.KnowledgeAssetRepositoryApi;
 import org.omg.spec.api4kp._20200801.api.transrepresentation.v4.server.DeserializeApiInternal;
 import org.omg.spec.api4kp._20200801.api.transrepresentation.v4.server.TransxionApiInternal;
+import org.omg.spec.api4kp._20200801.id.KeyIdentifier;
 import org.omg.spec.api4kp._20200801.id.Pointer;
 import org.omg.spec.api4kp._20200801.id.ResourceIdentifier;
 import org.omg.spec.api4kp._20200801.services.CompositeKnowledgeCarrier;
@@ -62,25 +92,80 @@ public abstract class CcpmToPlanDefPipeline implements _applyNamedTransform, _in
 
   public static final UUID id = UUID.fromString("77234f8c-718b-4429-b800-8b17369bc215");
 
+  // Stage names, as reported by the metrics
+  public static final String STRUCT = "struct";
+  public static final String PARSE_STAGE = "parse";
+  public static final String FLATTEN_DECISIONS = "flatten-decisions";
+  public static final String TRANSLATE_STAGE = "translate";
+  public static final String FLATTEN_PLANDEF = "flatten-plandef";
+  public static final String SELECT = "select";
+  public static final String BIND = "bind";
+  public static final String WEAVE = "weave";
+  public static final String SERIALIZE = "serialize";
+  // Counter names, as reported by the metrics
+  public static final String RETRANSLATED = "retranslated";
+
   KnowledgeAssetCatalogApi cat;
   KnowledgeAssetRepositoryApi repo;
 
   URI[] annotationVocabularies;
 
-  DeserializeApiInternal parser;
+  // the operators are not thread-safe: each supplies the calling thread's instance
+  Supplier<DeserializeApiInternal> parser;
 
-  TransxionApiInternal translator;
+  Supplier<TransxionApiInternal> translator;
 
-  _flattenArtifact flattener;
+  Supplier<_flattenArtifact> flattener;
 
-  _flattenArtifact dmnFlattener;
+  Supplier<_flattenArtifact> dmnFlattener;
 
+  /**
+   * Holds the Knowledge Bases to be transformed, and is only accessed through
+   * {@link #registry(Supplier)}, since the provider is not known to support concurrent access.
+   * The intermediate Knowledge Bases of a transformation live in a private
+   * {@link #newWorkspace() workspace} instead.
+   */
   KnowledgeBaseProvider kbManager;
 
   _askQuery dataShapeQuery;
 
 
-  protected Map<Integer, Consumer<Answer<KnowledgeCarrier>>> injectors = new HashMap<>();
+  protected Map<Integer, Consumer<Answer<KnowledgeCarrier>>> injectors = new ConcurrentHashMap<>();
+
+  /**
+   * Serializes the transformations of the same Knowledge Base, which is consumed
+   * by the transformation, while transformations of different Knowledge Bases run concurrently
+   */
+  final StripedLocks kbaseLocks = StripedLocks.forProcessors();
+
+  /**
+   * When set, the DMN components are flattened concurrently on this executor
+   */
+  Executor decisionFlatteningExecutor;
+
+  /**
+   * When set, the outputs of the parse, flatten and translate stages are reused across requests
+   */
+  StageCache stageCache;
+
+  /**
+   * When set, the terminology lexica are looked up in (and shared through) this cache
+   */
+  LexiconCache lexiconCache;
+
+  /**
+   * When set, the components are translated individually, and only when changed
+   */
+  TranslationFragments translationFragments;
+
+  OperationMetrics metrics = OperationMetrics.disabled();
+
+  AdmissionControl admission = AdmissionControl.unbounded();
+
+  /**
+   * When set, concurrent transformations of the same Knowledge Base share one computation
+   */
+  SingleFlight<List<Object>, Answer<KnowledgeCarrier>> inFlight;
 
   public CcpmToPlanDefPipeline(
       @Autowired KnowledgeAssetCatalogApi cat,
@@ -96,32 +181,144 @@ public abstract class CcpmToPlanDefPipeline implements _applyNamedTransform, _in
   }
 
   protected void init() {
-    parser =
-        new LanguageDeSerializer(asList(new DMN12Parser(), new CMMN11Parser()));
+    // the operators are held by the registry, one instance per thread
+    OperatorRegistry operators = OperatorRegistry.shared();
 
-    translator = new TransrepresentationExecutor(
-        asList(new CmmnToPlanDefTranslator(), new DmnToPlanDefTranslator())
-    );
+    parser
+        = operators::decisionModelParser;
+
+    translator
+        = operators::planDefTranslator;
 
     flattener
-        = new PlanDefinitionFlattener();
+        = operators::planDefFlattener;
 
     dmnFlattener
-        = new DMN12ModelFlattener();
+        = operators::dmnFlattener;
 
     kbManager
-        = new KnowledgeBaseProvider(repo)
+        = newWorkspace();
+
+  }
+
+  /**
+   * @return a new Knowledge Base provider, for the intermediate Knowledge Bases of
+   * one transformation
+   */
+  protected KnowledgeBaseProvider newWorkspace() {
+    return new KnowledgeBaseProvider(repo)
         .withNamedSelector(PlanDefSelector::new)
         .withNamedWeaver(PlanDefTerminologyWeaver::new)
         .withNamedBinder(PlanDefDataShapeBinder::new);
+  }
 
+  /**
+   * Executes an operation on the (shared) Knowledge Base provider, e.g. the initialization,
+   * retrieval or deletion of a Knowledge Base, excluding the other threads
+   */
+  protected <T> T registry(Supplier<T> op) {
+    synchronized (kbManager) {
+      return op.get();
+    }
   }
 
+  /**
+   * Injectors are shared by all the transformations, and may be invoked concurrently
+   */
   public CcpmToPlanDefPipeline addInjector(int index, Consumer<Answer<KnowledgeCarrier>> consumer) {
     injectors.put(index, consumer);
     return this;
   }
 
+  /**
+   * Flattens the decision models of a composite in parallel, using the given executor.
+   * A null executor restores the sequential behavior.
+   */
+  public CcpmToPlanDefPipeline withParallelDecisionFlattening(Executor executor) {
+    this.decisionFlatteningExecutor = executor;
+    return this;
+  }
+
+  /**
+   * Reuses the outputs of the parse, flatten and translate stages when the same models
+   * (by asset id, version and content) are transformed again. A null cache disables caching.
+   */
+  public CcpmToPlanDefPipeline withStageCache(StageCache stageCache) {
+    this.stageCache = stageCache;
+    return this;
+  }
+
+  public StageCache getStageCache() {
+    return stageCache;
+  }
+
+  /**
+   * Retains the PlanDefinition translated from each component, and only re-translates the
+   * components that changed since the previous transformation, or import a component that did.
+   * The flattening of the PlanDefinitions, and the following stages, are always re-run.
+   * A null store restores the translation of the whole composite.
+   */
+  public CcpmToPlanDefPipeline withIncrementalTranslation(TranslationFragments fragments) {
+    this.translationFragments = fragments;
+    return this;
+  }
+
+  /**
+   * Looks up the lexica used to weave the terms in the given cache, rather than
+   * retrieving them from the asset repository on every transformation.
+   * A null cache disables caching.
+   */
+  public CcpmToPlanDefPipeline withLexiconCache(LexiconCache lexiconCache) {
+    this.lexiconCache = lexiconCache;
+    return this;
+  }
+
+  /**
+   * Records the latency, failures and output size of each stage of the transformation
+   * (see the stage names defined in this class). Null disables the recording.
+   */
+  public CcpmToPlanDefPipeline withMetrics(OperationMetrics metrics) {
+    this.metrics = metrics != null ? metrics : OperationMetrics.disabled();
+    return this;
+  }
+
+  public OperationMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Bounds the number of concurrent (and waiting) transformations, and gives each
+   * transformation a deadline, checked between stages. Null admits all the transformations.
+   */
+  public CcpmToPlanDefPipeline withAdmissionControl(AdmissionControl admission) {
+    this.admission = admission != null ? admission : AdmissionControl.unbounded();
+    return this;
+  }
+
+  public AdmissionControl getAdmissionControl() {
+    return admission;
+  }
+
+  /**
+   * Lets concurrent transformations of the same Knowledge Base (id, version and parameters)
+   * share the computation of the first one, each receiving its own copy of the result.
+   * Coalesced transformations are admitted like any other, and wait for the first one
+   * until their own deadline: should the first one not complete before its deadline,
+   * the waiting transformations retry. The Knowledge Base is released by the last of the
+   * coalesced transformations to complete.
+   */
+  public CcpmToPlanDefPipeline withRequestCoalescing(boolean coalesce) {
+    this.inFlight = coalesce ? new SingleFlight<>(ans -> ans.map(CarrierCopies::copy)) : null;
+    return this;
+  }
+
+  /**
+   * @return the coalescing statistics, if coalescing is enabled
+   */
+  public Optional<SingleFlight<List<Object>, Answer<KnowledgeCarrier>>> getRequestCoalescing() {
+    return Optional.ofNullable(inFlight);
+  }
+
   public Consumer<Answer<KnowledgeCarrier>> injector(int j) {
     return injectors.getOrDefault(j, kc -> {
     });
@@ -130,112 +327,539 @@ public abstract class CcpmToPlanDefPipeline implements _applyNamedTransform, _in
   @Override
   public Answer<KnowledgeCarrier> applyNamedTransform(UUID operatorId, UUID kbaseId,
       String versionTag, String xParams) {
-    try {
-      return doTransform(operatorId, kbaseId, versionTag, xParams);
-    } finally {
-      kbManager.deleteKnowledgeBase(kbaseId);
+    return applyNamedTransform(operatorId, kbaseId, versionTag, xParams,
+        admission.newDeadline());
+  }
+
+  /**
+   * Variant of {@link #applyNamedTransform(UUID, UUID, String, String)} with a given deadline.
+   * The remaining stages are skipped (and the intermediate KBs released) once the deadline
+   * expires, or is cancelled. The Knowledge Base is consumed in any case, including when
+   * the transformation is rejected by the admission control.
+   */
+  public Answer<KnowledgeCarrier> applyNamedTransform(UUID operatorId, UUID kbaseId,
+      String versionTag, String xParams, Deadline deadline) {
+    return admitted(operatorId, kbaseId, versionTag, xParams, this::getLexica, deadline);
+  }
+
+  /**
+   * Variant of {@link #applyNamedTransform(UUID, UUID, String, String)} that streams the
+   * final PlanDefinition to the given destination, encoded by the given writer,
+   * rather than returning it.
+   *
+   * @return the number of bytes written
+   */
+  public Answer<Long> applyNamedTransform(UUID operatorId, UUID kbaseId,
+      String versionTag, String xParams, PlanDefinitionWriter writer, OutputStream out) {
+    Answer<KnowledgeCarrier> planDef =
+        applyNamedTransform(operatorId, kbaseId, versionTag, xParams);
+    return metrics.time(SERIALIZE, () -> planDef.flatMap(pd -> writer.write(pd, out)),
+        Long::longValue);
+  }
+
+  /**
+   * @see #applyNamedTransform(UUID, UUID, String, String, PlanDefinitionWriter, OutputStream)
+   */
+  public Answer<Long> applyNamedTransform(UUID operatorId, UUID kbaseId,
+      String versionTag, String xParams, PlanDefinitionWriter writer,
+      WritableByteChannel channel) {
+    return applyNamedTransform(operatorId, kbaseId, versionTag, xParams, writer,
+        Channels.newOutputStream(channel));
+  }
+
+  /**
+   * Executes a transformation once admitted, releasing the Knowledge Base if the
+   * transformation is not admitted, unless coalesced transformations of it are in flight
+   */
+  private Answer<KnowledgeCarrier> admitted(UUID operatorId, UUID kbaseId, String versionTag,
+      String xParams, Supplier<Answer<KnowledgeCarrier>> lexica, Deadline deadline) {
+    AtomicBoolean started = new AtomicBoolean();
+    Answer<KnowledgeCarrier> ans = admission.admit(deadline, dl -> {
+      started.set(true);
+      return coalesced(operatorId, kbaseId, versionTag, xParams, lexica, dl);
+    });
+    if (!started.get()) {
+      Runnable release = () -> releaseKnowledgeBase(kbaseId);
+      if (inFlight != null) {
+        inFlight.release(getRequestKey(operatorId, kbaseId, versionTag, xParams), release);
+      } else {
+        release.run();
+      }
+    }
+    return ans;
+  }
+
+  private Answer<KnowledgeCarrier> coalesced(UUID operatorId, UUID kbaseId, String versionTag,
+      String xParams, Supplier<Answer<KnowledgeCarrier>> lexica, Deadline deadline) {
+    Supplier<Answer<KnowledgeCarrier>> transform = () -> kbaseLocks.withLock(kbaseId, deadline,
+        () -> doTransform(operatorId, kbaseId, versionTag, xParams, lexica, deadline),
+        () -> deadline.exceeded("lock"));
+    Runnable release = () -> releaseKnowledgeBase(kbaseId);
+    if (inFlight == null) {
+      try {
+        return transform.get();
+      } finally {
+        release.run();
+      }
     }
+    // the last of the coalesced transformations releases the Knowledge Base, so that the
+    // others can retry if the first one does not complete in its own time
+    return inFlight.execute(getRequestKey(operatorId, kbaseId, versionTag, xParams),
+        transform, deadline, () -> deadline.exceeded("coalesced"), release);
+  }
+
+  private static List<Object> getRequestKey(UUID operatorId, UUID kbaseId, String versionTag,
+      String xParams) {
+    return Arrays.asList(operatorId, kbaseId, versionTag, xParams);
+  }
+
+  /**
+   * Deletes a (consumed) Knowledge Base, once no transformation of it is running
+   */
+  private void releaseKnowledgeBase(UUID kbaseId) {
+    kbaseLocks.withLock(kbaseId, () -> registry(() -> kbManager.deleteKnowledgeBase(kbaseId)));
+  }
+
+  /**
+   * Transforms a batch of Knowledge Bases, running up to 'parallelism' transformations at a time
+   * on the given executor. Each Knowledge Base is transformed as in
+   * {@link #applyNamedTransform(UUID, UUID, String, String)}, and a failure of one transformation
+   * does not affect the others.
+   *
+   * @param operatorId  the operator id
+   * @param kbases      the ids/versions of the Knowledge Bases to be transformed
+   * @param xParams     the (shared) transformation parameters
+   * @param executor    the executor, e.g. {@link BatchExecutors#forkJoin(int)}
+   * @param parallelism the maximum number of concurrent transformations
+   * @return the transformation results, in the order of the input Knowledge Bases
+   */
+  public List<Answer<KnowledgeCarrier>> applyNamedTransforms(UUID operatorId,
+      Collection<? extends ResourceIdentifier> kbases, String xParams,
+      Executor executor, int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Parallelism must be positive, found " + parallelism);
+    }
+    Semaphore permits = new Semaphore(parallelism);
+    List<CompletableFuture<Answer<KnowledgeCarrier>>> results = new ArrayList<>(kbases.size());
+    for (ResourceIdentifier kb : kbases) {
+      permits.acquireUninterruptibly();
+      try {
+        results.add(CompletableFuture
+            .supplyAsync(() -> applyNamedTransform(
+                operatorId, kb.getUuid(), kb.getVersionTag(), xParams), executor)
+            .exceptionally(Answer::failed)
+            .whenComplete((ans, err) -> permits.release()));
+      } catch (RejectedExecutionException re) {
+        permits.release();
+        results.add(CompletableFuture.completedFuture(Answer.failed(re)));
+      }
+    }
+    return results.stream()
+        .map(CompletableFuture::join)
+        .collect(toList());
+  }
+
+  /**
+   * Asynchronous variant of {@link #applyNamedTransform(UUID, UUID, String, String)}.
+   *
+   * The retrieval of the lexica, which only depends on the configuration of this pipeline,
+   * is submitted immediately and runs concurrently with the parsing, flattening and translation
+   * of the composite, so that it is (usually) off the critical path. If the retrieval has not
+   * started by the time the lexica are needed (e.g. because the executor is saturated), it is
+   * run inline instead; if it has started, it is waited for within the deadline.
+   *
+   * @param operatorId the operator id
+   * @param kbaseId    the id of the Knowledge Base with the CCPM composite
+   * @param versionTag the version of the Knowledge Base
+   * @param xParams    the transformation parameters
+   * @param executor   the executor the (concurrent) steps are run on
+   * @return a future of the transformation result. Cancelling the future cancels the
+   * deadline of the transformation, so that its remaining stages are skipped, as well as
+   * the retrieval of the lexica
+   */
+  public CompletableFuture<Answer<KnowledgeCarrier>> applyNamedTransformAsync(UUID operatorId,
+      UUID kbaseId, String versionTag, String xParams, Executor executor) {
+    // the deadline starts when the request arrives, not when it is scheduled
+    return applyNamedTransformAsync(operatorId, kbaseId, versionTag, xParams, executor,
+        admission.newDeadline());
+  }
+
+  /**
+   * Variant of {@link #applyNamedTransformAsync(UUID, UUID, String, String, Executor)}
+   * with a given deadline, which can also be cancelled directly
+   */
+  public CompletableFuture<Answer<KnowledgeCarrier>> applyNamedTransformAsync(UUID operatorId,
+      UUID kbaseId, String versionTag, String xParams, Executor executor, Deadline deadline) {
+    PrefetchedLexica lexica = new PrefetchedLexica(this::getLexica);
+    lexica.submit(executor);
+    CompletableFuture<Answer<KnowledgeCarrier>> result = CompletableFuture
+        .supplyAsync(() -> admitted(operatorId, kbaseId, versionTag, xParams,
+            () -> lexica.await(deadline), deadline), executor)
+        .exceptionally(Answer::failed);
+    result.whenComplete((ans, err) -> {
+      if (err instanceof CancellationException) {
+        deadline.cancel();
+      }
+      // a retrieval that has not started yet is no longer needed
+      lexica.cancel();
+    });
+    return result;
   }
 
   protected Answer<KnowledgeCarrier> doTransform(UUID operatorId, UUID kbaseId,
       String versionTag, String xParams) {
+    return doTransform(operatorId, kbaseId, versionTag, xParams, this::getLexica,
+        Deadline.none());
+  }
 
-    Answer<KnowledgeCarrier> composite =
-        kbManager.getKnowledgeBaseManifestation(kbaseId, versionTag);
-    UUID rootId = composite.get().mainComponent().getAssetId().getUuid();
+  /**
+   * @param lexica   provides the lexica for the final weaving step
+   * @param deadline checked before each stage
+   */
+  protected Answer<KnowledgeCarrier> doTransform(UUID operatorId, UUID kbaseId,
+      String versionTag, String xParams, Supplier<Answer<KnowledgeCarrier>> lexica,
+      Deadline deadline) {
+    // The intermediate KBs are private to this transformation,
+    // and released once the final artifact has been retrieved
+    KnowledgeBaseProvider workspace = newWorkspace();
+    try (KnowledgeBaseArena arena = KnowledgeBaseArena.open(workspace::deleteKnowledgeBase)) {
+      Answer<KnowledgeCarrier> composite = metrics.time(STRUCT, () ->
+          registry(() -> kbManager.getKnowledgeBaseManifestation(kbaseId, versionTag)),
+          this::countComponents);
+      UUID rootId = composite.get().mainComponent().getAssetId().getUuid();
+
+      Answer<KnowledgeCarrier> struct = composite
+          .map(CompositeKnowledgeCarrier.class::cast)
+          .map(CompositeKnowledgeCarrier::getStruct);
+      injector(0).accept(struct);
+
+      SourceKey sourceKey = stageCache != null
+          ? stageCache.keyOf(composite.get()).orElse(null)
+          : null;
+
+      if (deadline.isExpired()) {
+        return deadline.exceeded(PARSE_STAGE);
+      }
 
-    Answer<KnowledgeCarrier> struct = composite
-        .map(CompositeKnowledgeCarrier.class::cast)
-        .map(CompositeKnowledgeCarrier::getStruct);
-    injector(0).accept(struct);
+      // Parse, flatten and translate into PlanDefinition, unless already done for the same models
+      Answer<KnowledgeCarrier> planDefinitions = cached(TRANSLATE, sourceKey, () ->
+          translationFragments != null
+              ? translateIncrementally(composite, deadline)
+              : translate(composite, sourceKey, deadline));
+      injector(3).accept(planDefinitions);
+
+      // Flatten the composite, which at this point is homogeneous FHIR PlanDef
+      Answer<KnowledgeCarrier> planDefinition = metrics.time(FLATTEN_PLANDEF, () ->
+          planDefinitions
+              .flatMap(pds -> deadline.check(FLATTEN_PLANDEF, pds))
+              .reduce(kc -> flattener.get()
+                  .flattenArtifact((CompositeKnowledgeCarrier) kc, rootId, null)),
+          this::countComponents);
+      injector(4).accept(planDefinition);
+
+      // prepare for the binding of the data shapes
+      Answer<Pointer> planDefKB = planDefinition
+          .flatMap(pd -> deadline.check(SELECT, pd))
+          .flatMap(m -> workspace.initKnowledgeBase(m, null))
+          .map(arena::track);
+
+      // TODO can this be simplified? The API chaining is not yet as smooth as it should be
+      Answer<KnowledgeCarrier> shapedPlanDef = planDefKB
+          .flatMap(pdPtr -> metrics.time(SELECT, () -> workspace.namedSelect(
+              pdPtr.getUuid(), pdPtr.getVersionTag(),
+              PlanDefSelector.id, PlanDefSelector.pivotQuery(annotationVocabularies), null)
+              .map(arena::track),
+              ptr -> 1))
+          .flatMap(conceptsPtr ->
+              workspace
+                  .getKnowledgeBaseManifestation(conceptsPtr.getUuid(), conceptsPtr.getVersionTag())
+                  .flatMap(concepts -> deadline.check(BIND, concepts))
+                  .flatMap(selectedConcepts -> metrics.time(BIND, () ->
+                      dataShapeQuery.askQuery(null, null, selectedConcepts, null)
+                          .flatMap(bindings ->
+                              planDefKB.flatMap(
+                                  pd -> workspace
+                                      .bind(pd.getUuid(), pd.getVersionTag(), bindings.get(0))
+                                      .map(arena::track))),
+                      ptr -> 1))
+                  .flatMap(ptr -> deadline.check(WEAVE, ptr))
+                  .flatMap(ptr -> metrics.time(WEAVE, () ->
+                      lexica.get()
+                          .flatMap(lex -> workspace.namedWeave(ptr.getUuid(), ptr.getVersionTag(),
+                              PlanDefTerminologyWeaver.id, lex, SKOS.altLabel.getLocalName())
+                              .map(arena::track)),
+                      wovenPtr -> 1))
+                  .flatMap(ptr -> workspace
+                      .getKnowledgeBaseManifestation(ptr.getUuid(), ptr.getVersionTag())));
+
+      injector(5).accept(shapedPlanDef);
+
+      // And finally unwrap...
+      return shapedPlanDef;
+    }
+  }
 
+  private Answer<KnowledgeCarrier> translate(Answer<KnowledgeCarrier> composite,
+      SourceKey sourceKey, Deadline deadline) {
     // Parse
-    Answer<KnowledgeCarrier> parsedComposite =
-        composite.flatMap(kc -> parser.applyLift(kc, Abstract_Knowledge_Expression));
+    Answer<KnowledgeCarrier> parsedComposite = cached(PARSE, sourceKey, () ->
+        metrics.time(PARSE_STAGE, () ->
+                composite.flatMap(kc -> parser.get().applyLift(kc, Abstract_Knowledge_Expression)),
+            this::countComponents));
     injector(1).accept(parsedComposite);
 
-    Answer<KnowledgeCarrier> wovenComposite = flattenDecisions(parsedComposite);
-
+    Answer<KnowledgeCarrier> wovenComposite = cached(FLATTEN, sourceKey, () ->
+        metrics.time(FLATTEN_DECISIONS, () -> deadline.isExpired()
+                ? deadline.exceeded(FLATTEN_DECISIONS)
+                : flattenDecisions(parsedComposite),
+            this::countComponents));
     injector(2).accept(wovenComposite);
 
     // Translate into PlanDefinition
-    Answer<KnowledgeCarrier> planDefinitions =
-        wovenComposite.flatMap(kc ->
-                translator.applyTransrepresent(kc, encode(rep(FHIR_STU3, SNOMED_CT, PCV)), null));
-    injector(3).accept(planDefinitions);
-
-    // Flatten the composite, which at this point is homogeneous FHIR PlanDef
-    Answer<KnowledgeCarrier> planDefinition = planDefinitions
-        .reduce(kc -> flattener.flattenArtifact((CompositeKnowledgeCarrier) kc, rootId, null));
-    injector(4).accept(planDefinition);
-
-    // TODO FIXME Need to think about 'GC' for the kbManager.. when are KB released, vs overwritten?
-    planDefinition.map(kc -> kbManager.deleteKnowledgeBase(kc.getAssetId().getUuid()));
-
-    // prepare for the binding of the data shapes
-    Answer<Pointer> planDefKB = planDefinition
-        .flatMap(m -> kbManager.initKnowledgeBase(m, null));
-
-    // TODO can this be simplified? The API chaining is not yet as smooth as it should be
-    Answer<KnowledgeCarrier> shapedPlanDef = planDefKB
-        .flatMap(pdPtr -> kbManager.namedSelect(
-            pdPtr.getUuid(), pdPtr.getVersionTag(),
-            PlanDefSelector.id, PlanDefSelector.pivotQuery(annotationVocabularies), null))
-        .flatMap(conceptsPtr ->
-            kbManager
-                .getKnowledgeBaseManifestation(conceptsPtr.getUuid(), conceptsPtr.getVersionTag())
-                .flatMap(selectedConcepts ->
-                    dataShapeQuery.askQuery(null, null, selectedConcepts, null))
-                .flatMap(bindings ->
-                    planDefKB.flatMap(
-                        pd -> kbManager.bind(pd.getUuid(), pd.getVersionTag(), bindings.get(0))))
-                .flatMap(ptr ->
-                    PlanDefTerminologyWeaver.getLexica(annotationVocabularies, cat, repo)
-                        .flatMap(lex -> kbManager.namedWeave(ptr.getUuid(), ptr.getVersionTag(),
-                            PlanDefTerminologyWeaver.id, lex, SKOS.altLabel.getLocalName())))
-                .flatMap(ptr -> kbManager
-                    .getKnowledgeBaseManifestation(ptr.getUuid(), ptr.getVersionTag())));
-
-    injector(5).accept(shapedPlanDef);
-
-    // And finally unwrap...
-    return shapedPlanDef;
+    return metrics.time(TRANSLATE_STAGE, () ->
+            wovenComposite
+                .flatMap(kc -> deadline.check(TRANSLATE_STAGE, kc))
+                .flatMap(kc -> translator.get()
+                    .applyTransrepresent(kc, encode(rep(FHIR_STU3, SNOMED_CT, PCV)), null)),
+        this::countComponents);
+  }
+
+  /**
+   * Reuses the PlanDefinition fragments of the components that are not affected by a change,
+   * and translates the others, parsing and flattening only the models in their import closure.
+   * Falls back to the translation of the whole composite when the struct, or the serialized
+   * models, are not available.
+   */
+  private Answer<KnowledgeCarrier> translateIncrementally(Answer<KnowledgeCarrier> composite,
+      Deadline deadline) {
+    CompositeKnowledgeCarrier ckc = (CompositeKnowledgeCarrier) composite.get();
+    Optional<ImportClosures> closures = Optional.ofNullable(ckc.getStruct())
+        .flatMap(struct -> struct.as(Model.class))
+        .map(ImportClosures::of);
+    Optional<Map<UUID, String>> keys = closures
+        .flatMap(c -> translationFragments.keysOf(ckc, c));
+    if (keys.isEmpty()) {
+      return translate(composite, null, deadline);
+    }
+    Map<UUID, String> fragmentKeys = keys.get();
+
+    List<KnowledgeCarrier> allComps = ckc.componentList();
+    Map<UUID, KnowledgeCarrier> fragments = new HashMap<>(allComps.size());
+    List<KnowledgeCarrier> stale = new ArrayList<>();
+    for (KnowledgeCarrier comp : allComps) {
+      UUID compId = comp.getAssetId().getUuid();
+      Optional<KnowledgeCarrier> fragment = translationFragments.get(fragmentKeys.get(compId));
+      if (fragment.isPresent()) {
+        fragments.put(compId, fragment.get());
+      } else {
+        stale.add(comp);
+      }
+    }
+    metrics.count(RETRANSLATED, stale.size());
+
+    if (!stale.isEmpty()) {
+      // the stale models can only be flattened together with the models they import
+      Set<String> scope = new HashSet<>();
+      stale.forEach(comp ->
+          scope.addAll(closures.get().closureOf(comp.getAssetId().getVersionId().toString())));
+      List<KnowledgeCarrier> scopeComps = allComps.stream()
+          .filter(comp -> scope.contains(comp.getAssetId().getVersionId().toString()))
+          .collect(toList());
+      Set<UUID> staleIds = stale.stream()
+          .map(comp -> comp.getAssetId().getUuid())
+          .collect(toSet());
+
+      Answer<KnowledgeCarrier> translated = translate(
+          Answer.of(ofMixedAnonymousComposite(stale.get(0).getAssetId(), scopeComps)), null,
+          deadline);
+      if (translated.isFailure()) {
+        return translated;
+      }
+      for (KnowledgeCarrier fragment : ((CompositeKnowledgeCarrier) translated.get())
+          .componentList()) {
+        UUID compId = fragment.getAssetId().getUuid();
+        if (staleIds.contains(compId)) {
+          translationFragments.put(fragmentKeys.get(compId), fragment);
+          fragments.put(compId, fragment);
+        }
+      }
+    }
+
+    // re-assemble the fragments, in the order of the source components
+    List<KnowledgeCarrier> planDefs = allComps.stream()
+        .map(comp -> fragments.get(comp.getAssetId().getUuid()))
+        .collect(toList());
+    return Answer.of(ofUniformAnonymousComposite(ckc.mainComponent().getAssetId(), planDefs));
+  }
+
+  protected Answer<KnowledgeCarrier> getLexica() {
+    return lexiconCache != null
+        ? lexiconCache.getLexica(annotationVocabularies,
+        vocabs -> PlanDefTerminologyWeaver.getLexica(vocabs, cat, repo))
+        : PlanDefTerminologyWeaver.getLexica(annotationVocabularies, cat, repo);
   }
 
   private Answer<KnowledgeCarrier> flattenDecisions(Answer<KnowledgeCarrier> parsedComposite) {
-    // TODO - see if/how to improve this whole method
     CompositeKnowledgeCarrier ckc = (CompositeKnowledgeCarrier) parsedComposite.get();
     List<KnowledgeCarrier> allComps = ckc.componentList();
-    List<KnowledgeCarrier> flatComps = new ArrayList<>(allComps.size());
 
-    for (KnowledgeCarrier kc : allComps) {
-      if (CMMN_1_1.sameAs(kc.getRepresentation().getLanguage())) {
-        flatComps.add(kc);
-      } else {
-        ResourceIdentifier rootId = kc.getAssetId();
-        Answer<KnowledgeCarrier> flat = dmnFlattener
-            .flattenArtifact(
-                ofMixedAnonymousComposite(rootId, allComps),
-                rootId.getUuid(),
-                null);
+    // The import graph (and its struct) is the same for every decision model: build it once,
+    // then re-root it in each model, as the flattener expects
+    CompositeKnowledgeCarrier importGraph = (CompositeKnowledgeCarrier)
+        ofMixedAnonymousComposite(ckc.mainComponent().getAssetId(), allComps);
+
+    Map<KeyIdentifier, KnowledgeCarrier> flatComps = new HashMap<>(allComps.size());
+    if (decisionFlatteningExecutor == null) {
+      for (KnowledgeCarrier kc : allComps) {
+        Answer<KnowledgeCarrier> flat = flattenDecision(importGraph, kc);
+        if (flat.isFailure()) {
+          return flat;
+        }
+        flatComps.put(kc.getAssetId().asKey(), flat.get());
+      }
+    } else {
+      Map<KeyIdentifier, CompletableFuture<Answer<KnowledgeCarrier>>> pending
+          = new LinkedHashMap<>(allComps.size());
+      for (KnowledgeCarrier kc : allComps) {
+        pending.put(kc.getAssetId().asKey(),
+            CompletableFuture.supplyAsync(
+                () -> flattenDecision(importGraph, kc), decisionFlatteningExecutor));
+      }
+      // join in component order, so that the first failure is the same as in the sequential case
+      for (Map.Entry<KeyIdentifier, CompletableFuture<Answer<KnowledgeCarrier>>> e
+          : pending.entrySet()) {
+        Answer<KnowledgeCarrier> flat = e.getValue().join();
         if (flat.isFailure()) {
           return flat;
-        } else {
-          flatComps.add(flat.get());
         }
+        flatComps.put(e.getKey(), flat.get());
       }
     }
 
-    ckc.components()
-        .forEach(comp -> {
-          KnowledgeCarrier flatComp = flatComps.stream()
-              .filter(f -> comp.getAssetId().asKey().equals(f.getAssetId().asKey()))
-//              .filter(f -> allComps.indexOf(comp) == flatComps.indexOf(f))
-              .findFirst()
-              .orElseThrow();
-          comp.setExpression(flatComp.getExpression());
-        });
-    return Answer.of(ckc);
+    // The parsed composite may be cached: rewrite the components into a new composite
+    List<KnowledgeCarrier> wovenComps = allComps.stream()
+        .map(comp -> {
+          KnowledgeCarrier flatComp =
+              Optional.ofNullable(flatComps.get(comp.getAssetId().asKey()))
+                  .orElseThrow();
+          return copyWithExpression(comp, flatComp.getExpression());
+        })
+        .collect(toList());
+    return Answer.of(new CompositeKnowledgeCarrier()
+        .withAssetId(ckc.getAssetId())
+        .withArtifactId(ckc.getArtifactId())
+        .withLevel(ckc.getLevel())
+        .withRepresentation(ckc.getRepresentation())
+        .withLabel(ckc.getLabel())
+        .withRootId(ckc.getRootId())
+        .withStruct(ckc.getStruct())
+        .withComponent(wovenComps));
+  }
+
+  private KnowledgeCarrier copyWithExpression(KnowledgeCarrier comp, Object expression) {
+    return new KnowledgeCarrier()
+        .withAssetId(comp.getAssetId())
+        .withArtifactId(comp.getArtifactId())
+        .withLevel(comp.getLevel())
+        .withRepresentation(comp.getRepresentation())
+        .withLabel(comp.getLabel())
+        .withExpression(expression);
+  }
+
+  private long countComponents(KnowledgeCarrier kc) {
+    return kc instanceof CompositeKnowledgeCarrier
+        ? ((CompositeKnowledgeCarrier) kc).componentList().size()
+        : 1;
+  }
+
+  private Answer<KnowledgeCarrier> cached(Stage stage, SourceKey sourceKey,
+      Supplier<Answer<KnowledgeCarrier>> stageOp) {
+    return stageCache != null
+        ? stageCache.apply(stage, sourceKey, stageOp)
+        : stageOp.get();
+  }
+
+  /**
+   * Flattens a decision model, within the import graph rooted in the model itself,
+   * as the flattener expects. The rooted composites share the (read-only) components and
+   * struct of the import graph, rather than re-deriving the struct for each model.
+   */
+  private Answer<KnowledgeCarrier> flattenDecision(CompositeKnowledgeCarrier importGraph,
+      KnowledgeCarrier kc) {
+    if (CMMN_1_1.sameAs(kc.getRepresentation().getLanguage())) {
+      return Answer.of(kc);
+    }
+    ResourceIdentifier rootId = kc.getAssetId();
+    return dmnFlattener.get()
+        .flattenArtifact(rootedIn(importGraph, rootId), rootId.getUuid(), null);
+  }
+
+  private CompositeKnowledgeCarrier rootedIn(CompositeKnowledgeCarrier importGraph,
+      ResourceIdentifier rootId) {
+    return new CompositeKnowledgeCarrier()
+        .withAssetId(importGraph.getAssetId())
+        .withLevel(importGraph.getLevel())
+        .withRepresentation(importGraph.getRepresentation())
+        .withRootId(rootId)
+        .withStruct(importGraph.getStruct())
+        .withComponent(importGraph.componentList());
+  }
+
+
+  /**
+   * Lexica retrieved ahead of time, on an executor, or inline by the first caller that
+   * needs them before the executor has started the retrieval. Never blocks on a retrieval
+   * that has not started, so that it cannot deadlock a bounded executor.
+   */
+  private static final class PrefetchedLexica {
+
+    private final Supplier<Answer<KnowledgeCarrier>> loader;
+    private final AtomicBoolean claimed = new AtomicBoolean(false);
+    private final CompletableFuture<Answer<KnowledgeCarrier>> lexica = new CompletableFuture<>();
+
+    PrefetchedLexica(Supplier<Answer<KnowledgeCarrier>> loader) {
+      this.loader = loader;
+    }
+
+    void submit(Executor executor) {
+      try {
+        executor.execute(this::load);
+      } catch (RejectedExecutionException e) {
+        // loaded inline, when needed
+      }
+    }
+
+    Answer<KnowledgeCarrier> await(Deadline deadline) {
+      load();
+      try {
+        return lexica.get(deadline.remaining().toNanos(), TimeUnit.NANOSECONDS);
+      } catch (TimeoutException | CancellationException e) {
+        return deadline.exceeded(WEAVE);
+      } catch (ExecutionException e) {
+        return Answer.failed(e.getCause());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        deadline.cancel();
+        return deadline.exceeded(WEAVE);
+      }
+    }
+
+    void cancel() {
+      if (claimed.compareAndSet(false, true)) {
+        lexica.cancel(false);
+      }
+    }
+
+    private void load() {
+      if (!claimed.compareAndSet(false, true)) {
+        return;
+      }
+      try {
+        lexica.complete(loader.get());
+      } catch (RuntimeException e) {
+        lexica.complete(Answer.failed(e));
+      }
+    }
   }
 
 }
@@ -0,0 +1,154 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.tranx.bpm;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.omg.spec.api4kp._20200801.taxonomy.krformat.SerializationFormatSeries.JSON;
+import static org.omg.spec.api4kp._20200801.taxonomy.krformat.SerializationFormatSeries.XML_1_1;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import edu.mayo.kmdp.ops.runtime.OperatorRegistry;
+import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.GZIPOutputStream;
+import org.hl7.fhir.dstu3.model.PlanDefinition;
+import org.omg.spec.api4kp._20200801.Answer;
+import org.omg.spec.api4kp._20200801.services.KnowledgeCarrier;
+import org.omg.spec.api4kp._20200801.taxonomy.krformat.SerializationFormat;
+
+/**
+ * Encodes a PlanDefinition (AST) directly to a stream or channel, as FHIR JSON or XML,
+ * optionally gzipped, without materializing the serialized form as a String or byte array.
+ *
+ * The destination is flushed, but not closed, once the PlanDefinition has been written.
+ * Writers are immutable, and can be shared.
+ */
+public final class PlanDefinitionWriter {
+
+  private static final int BUFFER_SIZE = 16 * 1024;
+
+  private final SerializationFormat format;
+  private final boolean gzip;
+
+  private PlanDefinitionWriter(SerializationFormat format, boolean gzip) {
+    this.format = format;
+    this.gzip = gzip;
+  }
+
+  /**
+   * @param format JSON or XML
+   */
+  public static PlanDefinitionWriter of(SerializationFormat format) {
+    if (!JSON.sameAs(format) && !XML_1_1.sameAs(format)) {
+      throw new IllegalArgumentException("Unsupported FHIR format " + format);
+    }
+    return new PlanDefinitionWriter(format, false);
+  }
+
+  public static PlanDefinitionWriter json() {
+    return of(JSON);
+  }
+
+  public static PlanDefinitionWriter xml() {
+    return of(XML_1_1);
+  }
+
+  /**
+   * @return a writer that gzips the encoded PlanDefinition
+   */
+  public PlanDefinitionWriter withGzip(boolean gzip) {
+    return gzip == this.gzip ? this : new PlanDefinitionWriter(format, gzip);
+  }
+
+  public SerializationFormat getFormat() {
+    return format;
+  }
+
+  public boolean isGzip() {
+    return gzip;
+  }
+
+  /**
+   * @param planDef a carrier of a PlanDefinition AST
+   * @param out     the destination
+   * @return the number of bytes written to the destination (after compression, if any)
+   */
+  public Answer<Long> write(KnowledgeCarrier planDef, OutputStream out) {
+    return Answer.of(planDef)
+        .flatOpt(kc -> kc.as(PlanDefinition.class))
+        .flatMap(pd -> encode(pd, out));
+  }
+
+  /**
+   * @see #write(KnowledgeCarrier, OutputStream)
+   */
+  public Answer<Long> write(KnowledgeCarrier planDef, WritableByteChannel channel) {
+    return write(planDef, Channels.newOutputStream(channel));
+  }
+
+  private Answer<Long> encode(PlanDefinition planDef, OutputStream out) {
+    CountingOutputStream counter = new CountingOutputStream(out);
+    // closing the writer ends the compressor, but leaves the destination open
+    try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+        gzip ? new GZIPOutputStream(counter, BUFFER_SIZE) : counter, UTF_8), BUFFER_SIZE)) {
+      newParser().encodeResourceToWriter(planDef, writer);
+    } catch (IOException | RuntimeException e) {
+      return Answer.failed(e);
+    }
+    return Answer.of(counter.count);
+  }
+
+  private IParser newParser() {
+    // parsers are not thread safe, while the (shared) context is
+    FhirContext ctx = OperatorRegistry.shared().fhirContext();
+    return JSON.sameAs(format) ? ctx.newJsonParser() : ctx.newXmlParser();
+  }
+
+  /**
+   * Counts the bytes written through it, and only flushes (rather than closes) the destination
+   */
+  private static final class CountingOutputStream extends FilterOutputStream {
+
+    long count = 0;
+
+    CountingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      count += len;
+    }
+
+    @Override
+    public void close() throws IOException {
+      out.flush();
+    }
+  }
+
+}
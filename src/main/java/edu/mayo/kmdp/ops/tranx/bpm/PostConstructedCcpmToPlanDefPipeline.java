@@ -1,8 +1,17 @@
 package edu.mayo.kmdp.ops.tranx.bpm;
 
+import static java.util.stream.Collectors.joining;
+
 import edu.mayo.kmdp.knowledgebase.assemblers.rdf.GraphBasedAssembler;
 import edu.mayo.kmdp.knowledgebase.constructors.DependencyBasedConstructor;
+import edu.mayo.kmdp.ops.cache.BoundedCache;
+import edu.mayo.kmdp.ops.cache.CachingAssetRepository;
+import edu.mayo.kmdp.ops.cache.ImportClosures;
 import java.net.URI;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+import org.apache.jena.rdf.model.Model;
 import org.omg.spec.api4kp._20200801.Answer;
 import org.omg.spec.api4kp._20200801.api.inference.v4.server.ReasoningApiInternal._askQuery;
 import org.omg.spec.api4kp._20200801.api.knowledgebase.v4.server.CompositionalApiInternal._assembleCompositeArtifact;
@@ -13,6 +22,7 @@ import org.omg.spec.api4kp._20200801.api.terminology.v4.TermsApi;
 import org.omg.spec.api4kp._20200801.id.Pointer;
 import org.omg.spec.api4kp._20200801.id.ResourceIdentifier;
 import org.omg.spec.api4kp._20200801.services.KnowledgeCarrier;
+import org.omg.spec.api4kp._20200801.surrogate.Dependency;
 
 public class PostConstructedCcpmToPlanDefPipeline extends CcpmToPlanDefPipeline {
 
@@ -21,6 +31,12 @@ public class PostConstructedCcpmToPlanDefPipeline extends CcpmToPlanDefPipeline
 
   ResourceIdentifier compositeAssetId;
 
+  // structures, by root asset id and version, validated against the root surrogate on reuse
+  BoundedCache<String, CachedStructure> structCache;
+
+  // the carriers of the components, by asset id and version
+  CachingAssetRepository artifactCache;
+
   public PostConstructedCcpmToPlanDefPipeline(
       KnowledgeAssetCatalogApi cat,
       KnowledgeAssetRepositoryApi repo,
@@ -35,14 +51,129 @@ public class PostConstructedCcpmToPlanDefPipeline extends CcpmToPlanDefPipeline
         = GraphBasedAssembler.newInstance(repo);
   }
 
+  /**
+   * Reuses the dependency structure of a composite, by root asset id and version.
+   * Since the surrogate of the root can be re-published, e.g. to depend on a new version of a
+   * component, without a new version of the root, a reused structure is validated first,
+   * with a single read of the root surrogate: its own (surrogate) versions and its declared
+   * dependencies must be the ones it had when the structure was constructed.
+   * Changes to the surrogates of the other components, that keep their versions, are
+   * not detected, and should be signaled with {@link #onAssetChanged(ResourceIdentifier)}.
+   *
+   * @param maxStructures the number of structures to retain; 0 disables the caching
+   */
+  public PostConstructedCcpmToPlanDefPipeline withStructureCache(long maxStructures) {
+    this.structCache = maxStructures > 0 ? BoundedCache.lru(maxStructures) : null;
+    return this;
+  }
+
+  /**
+   * Assembles the composites from carriers retrieved (once per version) through a cache,
+   * so that re-assembling a known composite only retrieves the components whose
+   * version changed. The cached carriers are copied on retrieval.
+   *
+   * @param maxArtifacts the number of carriers to retain; 0 restores the direct retrieval
+   *                     from the repository
+   */
+  public PostConstructedCcpmToPlanDefPipeline withArtifactCache(long maxArtifacts) {
+    artifactCache = maxArtifacts > 0
+        ? new CachingAssetRepository(repo, maxArtifacts, CarrierCopies::copy)
+        : null;
+    assembler = GraphBasedAssembler.newInstance(artifactCache != null
+        ? artifactCache.asRepository()
+        : repo);
+    return this;
+  }
+
+  /**
+   * Evicts the structure of the given composite, e.g. after its dependencies have been
+   * re-published without a change of version
+   */
+  public void invalidateStructure(UUID rootAssetId) {
+    if (structCache != null) {
+      structCache.invalidateIf(key -> key.startsWith(rootAssetId + "|"));
+    }
+  }
+
+  /**
+   * Notifies that the surrogate, or the carrier, of an asset version has been re-published
+   * without a change of version: evicts the structures that include the asset, and its
+   * cached carriers
+   */
+  public void onAssetChanged(ResourceIdentifier assetId) {
+    if (structCache != null) {
+      String node = assetId.getVersionId().toString();
+      structCache.invalidateEntries((key, cached) -> cached.closures.contains(node));
+    }
+    if (artifactCache != null) {
+      artifactCache.invalidate(assetId.getUuid());
+    }
+  }
+
 
   @Override
   public Answer<Pointer> initKnowledgeBase(KnowledgeCarrier kc, String params) {
     ResourceIdentifier rootId = kc.getAssetId();
-    return constructor.getKnowledgeBaseStructure(rootId.getUuid(), rootId.getVersionTag(), null)
+    return getStructure(rootId)
         .flatMap(struct -> assembler.assembleCompositeArtifact(struct, null))
-        .flatWhole(m -> kbManager.initKnowledgeBase(m, params));
+        .flatWhole(m -> registry(() -> kbManager.initKnowledgeBase(m, params)));
   }
 
+  protected Answer<KnowledgeCarrier> getStructure(ResourceIdentifier rootId) {
+    // 'latest' is a moving target
+    if (structCache == null || rootId.getVersionTag() == null) {
+      return constructor.getKnowledgeBaseStructure(rootId.getUuid(), rootId.getVersionTag(), null);
+    }
+    String key = rootId.getUuid() + "|" + rootId.getVersionTag();
+    // read before the construction, so that a concurrent change is detected on the next reuse
+    Optional<String> tag = surrogateTag(rootId);
+    Optional<CachedStructure> hit = structCache.get(key);
+    if (hit.isPresent()) {
+      if (tag.isPresent() && tag.get().equals(hit.get().tag)) {
+        return Answer.of(hit.get().struct);
+      }
+      structCache.invalidateIf(key::equals);
+    }
+    Answer<KnowledgeCarrier> struct =
+        constructor.getKnowledgeBaseStructure(rootId.getUuid(), rootId.getVersionTag(), null);
+    Optional<ImportClosures> closures = struct.isSuccess()
+        ? struct.get().as(Model.class).map(ImportClosures::of)
+        : Optional.empty();
+    if (tag.isPresent() && closures.isPresent()) {
+      structCache.put(key, new CachedStructure(struct.get(), closures.get(), tag.get()));
+    }
+    return struct;
+  }
+
+  /**
+   * @return a tag of the root surrogate, which changes when the surrogate is re-published
+   * with a new (surrogate) version, or with different dependencies
+   */
+  private Optional<String> surrogateTag(ResourceIdentifier rootId) {
+    Answer<String> tag = cat.getKnowledgeAssetVersion(rootId.getUuid(), rootId.getVersionTag())
+        .map(asset -> Stream.concat(
+            asset.getSurrogate().stream()
+                .filter(surr -> surr.getArtifactId() != null)
+                .map(surr -> "surrogate:" + surr.getArtifactId().getVersionId()),
+            asset.getLinks().stream()
+                .filter(Dependency.class::isInstance)
+                .map(link -> "dependency:" + ((Dependency) link).getHref().getVersionId()))
+            .sorted()
+            .collect(joining(" ")));
+    return tag.isSuccess() ? Optional.of(tag.get()) : Optional.empty();
+  }
+
+  private static final class CachedStructure {
+
+    final KnowledgeCarrier struct;
+    final ImportClosures closures;
+    final String tag;
+
+    CachedStructure(KnowledgeCarrier struct, ImportClosures closures, String tag) {
+      this.struct = struct;
+      this.closures = closures;
+      this.tag = tag;
+    }
+  }
 
 }
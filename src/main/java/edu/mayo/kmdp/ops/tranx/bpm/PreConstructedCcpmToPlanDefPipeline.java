@@ -20,7 +20,7 @@ public class PreConstructedCcpmToPlanDefPipeline extends CcpmToPlanDefPipeline {
 
   @Override
   public Answer<Pointer> initKnowledgeBase(KnowledgeCarrier kc, String params) {
-    return kbManager.initKnowledgeBase(kc, params);
+    return registry(() -> kbManager.initKnowledgeBase(kc, params));
   }
 
 }
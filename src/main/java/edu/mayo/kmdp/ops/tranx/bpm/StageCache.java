@@ -0,0 +1,205 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.tranx.bpm;
+
+import static java.util.stream.Collectors.toUnmodifiableSet;
+
+import edu.mayo.kmdp.ops.cache.BoundedCache;
+import edu.mayo.kmdp.ops.cache.ContentHash;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Supplier;
+import org.omg.spec.api4kp._20200801.Answer;
+import org.omg.spec.api4kp._20200801.services.CompositeKnowledgeCarrier;
+import org.omg.spec.api4kp._20200801.services.KnowledgeCarrier;
+
+/**
+ * Caches the outputs of the parse, flatten and translate stages of a
+ * {@link CcpmToPlanDefPipeline}, keyed by the (serialized) composite the stages were applied to.
+ *
+ * Outputs are copied when cached, and when retrieved, since the later stages of the
+ * pipeline rewrite the (FHIR) artifacts they are given: see {@link CarrierCopies}.
+ */
+public class StageCache {
+
+  public enum Stage {
+    PARSE, FLATTEN, TRANSLATE
+  }
+
+  private final BoundedCache<StageKey, KnowledgeCarrier> cache;
+
+  protected StageCache(BoundedCache<StageKey, KnowledgeCarrier> cache) {
+    this.cache = cache;
+  }
+
+  /**
+   * @param maxEntries the maximum number of stage outputs to retain
+   * @return a cache that evicts the least recently used stage outputs
+   */
+  public static StageCache lru(long maxEntries) {
+    return new StageCache(BoundedCache.lru(maxEntries));
+  }
+
+  /**
+   * @param maxBytes the maximum total size of the source models, across all the entries
+   * @return a cache that evicts the least recently used stage outputs, weighted by source size
+   */
+  public static StageCache sizeWeighted(long maxBytes) {
+    return new StageCache(BoundedCache.weighted(maxBytes, (k, v) -> k.source.hash.getSize()));
+  }
+
+  /**
+   * @param source a composite Knowledge Base manifestation, in serialized form
+   * @return the key of the stage outputs for that source, unless the source is not serialized
+   */
+  public Optional<SourceKey> keyOf(KnowledgeCarrier source) {
+    return ContentHash.of(source)
+        .map(hash -> new SourceKey(source, hash));
+  }
+
+  /**
+   * Returns the cached output of a stage, or applies the stage and caches its (successful) output
+   *
+   * @param stage   the stage
+   * @param source  the key of the source, or null if the source cannot be cached
+   * @param stageOp the stage computation
+   * @return the stage output
+   */
+  public Answer<KnowledgeCarrier> apply(Stage stage, SourceKey source,
+      Supplier<Answer<KnowledgeCarrier>> stageOp) {
+    if (source == null) {
+      return stageOp.get();
+    }
+    StageKey key = new StageKey(stage, source);
+    Optional<KnowledgeCarrier> hit = cache.get(key);
+    if (hit.isPresent()) {
+      return Answer.of(CarrierCopies.copy(hit.get()));
+    }
+    Answer<KnowledgeCarrier> out = stageOp.get();
+    if (out.isSuccess()) {
+      cache.put(key, CarrierCopies.copy(out.get()));
+    }
+    return out;
+  }
+
+  /**
+   * Drops any stage output that depends on the given asset, either as the composite,
+   * or as one of its components
+   *
+   * @param assetId the asset id
+   */
+  public void invalidate(UUID assetId) {
+    cache.invalidateIf(k -> k.source.concerns(assetId));
+  }
+
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  public long hitCount() {
+    return cache.hitCount();
+  }
+
+  public long missCount() {
+    return cache.missCount();
+  }
+
+  public long evictionCount() {
+    return cache.evictionCount();
+  }
+
+  public int size() {
+    return cache.size();
+  }
+
+  @Override
+  public String toString() {
+    return cache.toString();
+  }
+
+
+  public static final class SourceKey {
+
+    private final UUID assetId;
+    private final String versionTag;
+    private final ContentHash hash;
+    private final Set<UUID> componentIds;
+
+    private SourceKey(KnowledgeCarrier source, ContentHash hash) {
+      this.assetId = source.getAssetId() != null ? source.getAssetId().getUuid() : null;
+      this.versionTag = source.getAssetId() != null ? source.getAssetId().getVersionTag() : null;
+      this.hash = hash;
+      this.componentIds = source instanceof CompositeKnowledgeCarrier
+          ? ((CompositeKnowledgeCarrier) source).componentList().stream()
+          .filter(comp -> comp.getAssetId() != null)
+          .map(comp -> comp.getAssetId().getUuid())
+          .collect(toUnmodifiableSet())
+          : Set.of();
+    }
+
+    boolean concerns(UUID id) {
+      return id.equals(assetId) || componentIds.contains(id);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      SourceKey that = (SourceKey) o;
+      return Objects.equals(assetId, that.assetId)
+          && Objects.equals(versionTag, that.versionTag)
+          && hash.equals(that.hash);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(assetId, versionTag, hash);
+    }
+  }
+
+  static final class StageKey {
+
+    private final Stage stage;
+    private final SourceKey source;
+
+    StageKey(Stage stage, SourceKey source) {
+      this.stage = stage;
+      this.source = source;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      StageKey that = (StageKey) o;
+      return stage == that.stage && source.equals(that.source);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(stage, source);
+    }
+  }
+
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.tranx.bpm;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import edu.mayo.kmdp.ops.cache.BoundedCache;
+import edu.mayo.kmdp.ops.cache.ContentHash;
+import edu.mayo.kmdp.ops.cache.ImportClosures;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import org.omg.spec.api4kp._20200801.services.CompositeKnowledgeCarrier;
+import org.omg.spec.api4kp._20200801.services.KnowledgeCarrier;
+
+/**
+ * Retains the PlanDefinition fragment translated from each component of a composite,
+ * so that a revised composite only requires the translation of the components that changed,
+ * or depend (e.g. through DMN imports) on a component that changed.
+ *
+ * A fragment is keyed by the version and the content of the component, and of all the
+ * components in its import closure, as described by the struct of the composite.
+ * When a component is revised, the fragments of the components affected by the revision
+ * are evicted eagerly.
+ *
+ * Fragments are copied when retrieved, since the PlanDefinition flattener
+ * rewrites the fragments it merges.
+ */
+public class TranslationFragments {
+
+  private final BoundedCache<String, KnowledgeCarrier> fragments;
+
+  // the last known content of each component, by asset id
+  private final BoundedCache<UUID, String> lastSeen;
+
+  protected TranslationFragments(BoundedCache<String, KnowledgeCarrier> fragments,
+      BoundedCache<UUID, String> lastSeen) {
+    this.fragments = fragments;
+    this.lastSeen = lastSeen;
+  }
+
+  /**
+   * @param maxEntries the maximum number of fragments, and of known components, to retain
+   * @return a store that evicts the least recently used fragments and components.
+   * The revisions of an evicted component are not detected: its stale fragments are no longer
+   * evicted eagerly, but are never returned, and eventually age out
+   */
+  public static TranslationFragments lru(long maxEntries) {
+    return new TranslationFragments(BoundedCache.lru(maxEntries), BoundedCache.lru(maxEntries));
+  }
+
+  /**
+   * Computes the fragment keys of the components of a composite, and evicts the fragments
+   * of the components affected by a revision since the composite was last seen.
+   *
+   * @param composite a composite of serialized models
+   * @param closures  the import closures of the composite
+   * @return the fragment key of each component, by asset id, unless a component is not
+   * serialized, or not described by the import closures
+   */
+  public Optional<Map<UUID, String>> keysOf(CompositeKnowledgeCarrier composite,
+      ImportClosures closures) {
+    Map<String, String> contentKeys = new HashMap<>();
+    Map<UUID, String> nodes = new HashMap<>();
+    for (KnowledgeCarrier comp : composite.componentList()) {
+      if (comp.getAssetId() == null) {
+        return Optional.empty();
+      }
+      Optional<ContentHash> hash = ContentHash.of(comp);
+      if (hash.isEmpty()) {
+        return Optional.empty();
+      }
+      String node = comp.getAssetId().getVersionId().toString();
+      if (!closures.contains(node)) {
+        // the imports of the component are unknown
+        return Optional.empty();
+      }
+      contentKeys.put(node, node + "#" + hash.get().getDigest());
+      nodes.put(comp.getAssetId().getUuid(), node);
+    }
+
+    evictRevised(nodes, contentKeys, closures);
+
+    Map<UUID, String> keys = new HashMap<>();
+    nodes.forEach((uuid, node) -> {
+      MessageDigest md = newDigest();
+      for (String dep : new TreeSet<>(closures.closureOf(node))) {
+        md.update(contentKeys.getOrDefault(dep, dep).getBytes(UTF_8));
+        md.update((byte) '\n');
+      }
+      keys.put(uuid,
+          node + "|" + Base64.getUrlEncoder().withoutPadding().encodeToString(md.digest()));
+    });
+    return Optional.of(keys);
+  }
+
+  public Optional<KnowledgeCarrier> get(String key) {
+    return fragments.get(key)
+        .map(CarrierCopies::copy);
+  }
+
+  public void put(String key, KnowledgeCarrier fragment) {
+    fragments.put(key, CarrierCopies.copy(fragment));
+  }
+
+  public void invalidateAll() {
+    fragments.invalidateAll();
+    lastSeen.invalidateAll();
+  }
+
+  public long hitCount() {
+    return fragments.hitCount();
+  }
+
+  public long missCount() {
+    return fragments.missCount();
+  }
+
+  public int size() {
+    return fragments.size();
+  }
+
+  private void evictRevised(Map<UUID, String> nodes, Map<String, String> contentKeys,
+      ImportClosures closures) {
+    Set<String> revised = new HashSet<>();
+    nodes.forEach((uuid, node) -> {
+      String previous = lastSeen.get(uuid).orElse(null);
+      lastSeen.put(uuid, contentKeys.get(node));
+      if (previous != null && !previous.equals(contentKeys.get(node))) {
+        revised.add(node);
+        // the previous version of the component may have a different URI
+        revised.add(previous.substring(0, previous.lastIndexOf('#')));
+      }
+    });
+    if (!revised.isEmpty()) {
+      Set<String> affected = closures.affectedBy(revised);
+      fragments.invalidateIf(key -> affected.contains(key.substring(0, key.indexOf('|'))));
+    }
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return fragments.toString();
+  }
+
+}
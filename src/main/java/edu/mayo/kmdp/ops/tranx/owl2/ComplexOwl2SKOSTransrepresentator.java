@@ -1,8 +1,11 @@
 package edu.mayo.kmdp.ops.tranx.owl2;
 
 import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
+import static org.omg.spec.api4kp._20200801.AbstractCarrier.ofAst;
 import static org.omg.spec.api4kp._20200801.AbstractCarrier.rep;
 import static org.omg.spec.api4kp._20200801.AbstractCompositeCarrier.ofUniformAnonymousComposite;
+import static org.omg.spec.api4kp._20200801.id.SemanticIdentifier.newId;
 import static org.omg.spec.api4kp._20200801.taxonomy.krformat.SerializationFormatSeries.TXT;
 import static org.omg.spec.api4kp._20200801.taxonomy.krlanguage.KnowledgeRepresentationLanguageSeries.OWL_2;
 import static org.omg.spec.api4kp._20200801.taxonomy.krlanguage.KnowledgeRepresentationLanguageSeries.SPARQL_1_1;
@@ -14,12 +17,33 @@ import edu.mayo.kmdp.knowledgebase.extractors.rdf.SimplePivotExtractor;
 import edu.mayo.kmdp.knowledgebase.flatteners.rdf.JenaModelFlattener;
 import edu.mayo.kmdp.knowledgebase.selectors.skos.JenaSKOSSelector;
 import edu.mayo.kmdp.knowledgebase.selectors.sparql.v1_1.SparqlSelector;
-import edu.mayo.kmdp.language.parsers.owl2.JenaOwlParser;
-import edu.mayo.kmdp.language.translators.owl2.OWLtoSKOSTranscreator;
+import edu.mayo.kmdp.ops.cache.BoundedCache;
+import edu.mayo.kmdp.ops.cache.ContentHash;
+import edu.mayo.kmdp.ops.cache.PersistentModelStore;
+import edu.mayo.kmdp.ops.rdf.CompactGraph;
+import edu.mayo.kmdp.ops.runtime.KnowledgeBaseArena;
+import edu.mayo.kmdp.ops.runtime.OperatorRegistry;
 import edu.mayo.kmdp.terms.mireot.MireotExtractor;
 import edu.mayo.kmdp.terms.skosifier.Owl2SkosConfig.OWLtoSKOSTxParams;
 import edu.mayo.kmdp.util.PropertiesUtil;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Properties;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
 import org.omg.spec.api4kp._20200801.AbstractCarrier;
 import org.omg.spec.api4kp._20200801.AbstractCompositeCarrier;
 import org.omg.spec.api4kp._20200801.Answer;
@@ -31,28 +55,139 @@ import org.omg.spec.api4kp._20200801.id.Pointer;
 import org.omg.spec.api4kp._20200801.services.KnowledgeCarrier;
 import org.omg.spec.api4kp._20200801.services.transrepresentation.ModelMIMECoder;
 
-public class ComplexOwl2SKOSTransrepresentator implements _applyTransrepresent {
+public class ComplexOwl2SKOSTransrepresentator implements _applyTransrepresent,
+    AutoCloseable {
+
+  // the operators are not thread-safe: each supplies the calling thread's instance
 
   // parser
-  _applyLift parser = new JenaOwlParser();
+  Supplier<_applyLift> parser = OperatorRegistry.shared()::owlParser;
 
   // tranx
-  _applyTransrepresent skosifier = new OWLtoSKOSTranscreator();
+  Supplier<_applyTransrepresent> skosifier = OperatorRegistry.shared()::skosifier;
 
-  JenaModelFlattener jenaFlattener = new JenaModelFlattener();
+  Supplier<JenaModelFlattener> jenaFlattener = OperatorRegistry.shared()::rdfFlattener;
 
-  // knowledgebase
-  KnowledgeBaseApiInternal kbManager = new KnowledgeBaseProvider(null)
-      .withNamedSelector(SparqlSelector::new)
-      .withNamedSelector(JenaSKOSSelector::new)
-      .withNamedFlattener(jenaFlattener)
-      .withNamedExtractor(SimplePivotExtractor::new);
-  _getKnowledgeBaseStructure constructor = new JenaOwlImportConstructor(kbManager);
+  // knowledgebase: each run has a workspace of its own, for the KB of its ontologies,
+  // and each component is skosified in a workspace of its own
+  Map<UUID, Run> runs = new ConcurrentHashMap<>();
 
   KnowledgeCarrier selectQuery = AbstractCarrier.ofTree(
       MireotExtractor.MIREOT,
       rep(SPARQL_1_1, TXT));
 
+  // concurrency
+  Executor executor;
+  // the pool created by withParallelism, if any, shut down on close
+  ExecutorService ownedPool;
+
+  // merged import closures, shared across components and runs
+  BoundedCache<String, CompactGraph> closureCache;
+
+  // parsed ontologies and SKOS schemes, persisted across processes
+  PersistentModelStore store;
+
+  // flattened components, frozen for the SPARQL/SKOS selection
+  boolean compactGraphs = false;
+
+  /**
+   * Merges the import closure of each ontology component into a compact graph, in place of
+   * the flattening of the component, and reuses the merged closures across components and
+   * runs. The closures are keyed by the digests of the (serialized) content of the ontologies
+   * in the closure, so that a closure is reused as long as none of its ontologies changes.
+   *
+   * @param maxBytes the (estimated) memory retained by the merged closures, least recently
+   *                 used first out. Zero restores the flattening of each component
+   */
+  public ComplexOwl2SKOSTransrepresentator withImportClosureCache(long maxBytes) {
+    this.closureCache = maxBytes > 0
+        ? BoundedCache.weighted(maxBytes, (key, closure) -> closure.estimatedBytes())
+        : null;
+    return this;
+  }
+
+  /**
+   * Persists the parsed ontologies, and the SKOS schemes, in the given store, and reuses them
+   * in subsequent runs (including runs in other processes) on the same ontologies.
+   * Parsed ontologies are keyed by the version and the content of the serialized ontology;
+   * SKOS schemes by the content of all the ontologies in the run, and the parameters.
+   * A null store disables the persistence.
+   */
+  public ComplexOwl2SKOSTransrepresentator withPersistentStore(PersistentModelStore store) {
+    this.store = store;
+    return this;
+  }
+
+  /**
+   * Freezes the flattened ontology components into {@link CompactGraph}s, in place of the
+   * flattened KBs, before running the (SPARQL based) MIREOT and SKOS selections on them.
+   * Compact graphs trade a one-off copy of each component for a smaller footprint and faster
+   * pattern matching. Components backed by a merged import closure are not frozen again,
+   * since the closures are already compact.
+   */
+  public ComplexOwl2SKOSTransrepresentator withCompactGraphs(boolean compactGraphs) {
+    this.compactGraphs = compactGraphs;
+    return this;
+  }
+
+  /**
+   * Parses, and skosifies, the ontology components concurrently, with the given
+   * degree of parallelism. A parallelism of 1 restores the sequential behavior.
+   * The pool is owned by this transrepresentator, and shut down by {@link #close()},
+   * or when replaced.
+   */
+  public ComplexOwl2SKOSTransrepresentator withParallelism(int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Parallelism must be positive, found " + parallelism);
+    }
+    shutdownPool();
+    ownedPool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+    executor = ownedPool;
+    return this;
+  }
+
+  /**
+   * Parses, and skosifies, the ontology components concurrently, on the given executor,
+   * which is not shut down by this transrepresentator. A null executor restores
+   * the sequential behavior.
+   */
+  public ComplexOwl2SKOSTransrepresentator withExecutor(Executor executor) {
+    shutdownPool();
+    this.executor = executor;
+    return this;
+  }
+
+  /**
+   * Shuts down the pool created by {@link #withParallelism(int)}, if any:
+   * subsequent runs are sequential
+   */
+  @Override
+  public void close() {
+    if (ownedPool != null) {
+      shutdownPool();
+      executor = null;
+    }
+  }
+
+  private void shutdownPool() {
+    if (ownedPool != null) {
+      ownedPool.shutdown();
+      ownedPool = null;
+    }
+  }
+
+  /**
+   * @return a new Knowledge Base manager, with the operators used by the skosification,
+   * i.e. the calling thread's flattener: a workspace is meant to be used by the thread that
+   * creates it, or under the lock of its {@link Run}
+   */
+  private KnowledgeBaseApiInternal newWorkspace() {
+    return new KnowledgeBaseProvider(null)
+        .withNamedSelector(SparqlSelector::new)
+        .withNamedSelector(JenaSKOSSelector::new)
+        .withNamedFlattener(jenaFlattener.get())
+        .withNamedExtractor(SimplePivotExtractor::new);
+  }
 
   @Override
   public Answer<KnowledgeCarrier> applyTransrepresent(KnowledgeCarrier sourceArtifact,
@@ -60,100 +195,371 @@ public class ComplexOwl2SKOSTransrepresentator implements _applyTransrepresent {
 
     final Properties allprops = PropertiesUtil.parseProperties(xParams);
 
-    Pointer kbRef = newKB();
+    Pointer kbRef = prepareKnowledgeBase(sourceArtifact, allprops);
+    try {
+      return getKnowledgeBaseComponents(kbRef)
+          .flatMap(ptrs -> mapAll(ptrs, compPtr -> skosifyOrLoad(kbRef, compPtr, allprops)))
+          .map(AbstractCompositeCarrier::ofUniformAggregate);
+    } finally {
+      releaseKnowledgeBase(kbRef);
+    }
+  }
 
-    sourceArtifact.components()
-        .map(this::parse)
-        .collect(Answer.toList())
-        .forEach(KnowledgeCarrier.class, owl -> addToKnowledgeBase(kbRef, owl));
+  /**
+   * Streaming variant of {@link #applyTransrepresent(KnowledgeCarrier, String, String)}.
+   *
+   * Emits the SKOS scheme of each ontology component as soon as it has been produced,
+   * rather than aggregating all of them, and releases the intermediate KBs of that component
+   * right away. Only the parsed ontologies are retained until the end.
+   * The sink is never invoked concurrently, but, when a degree of parallelism has been set,
+   * the schemes are emitted in order of completion.
+   *
+   * @param sourceArtifact the (composite) OWL ontologies
+   * @param xParams        the skosification parameters
+   * @param sink           the consumer of the SKOS schemes
+   * @return the number of schemes emitted, or the first failure
+   */
+  public Answer<Integer> applyTransrepresent(KnowledgeCarrier sourceArtifact,
+      String xParams, Consumer<? super KnowledgeCarrier> sink) {
 
-    addStructureToKB(kbRef);
+    final Properties allprops = PropertiesUtil.parseProperties(xParams);
+    final Object emitLock = new Object();
+
+    Pointer kbRef = prepareKnowledgeBase(sourceArtifact, allprops);
+    try {
+      return getKnowledgeBaseComponents(kbRef)
+          .flatMap(ptrs -> forAll(ptrs, compPtr -> skosifyOrLoad(kbRef, compPtr, allprops)
+              .map(skos -> {
+                synchronized (emitLock) {
+                  sink.accept(skos);
+                }
+                return Boolean.TRUE;
+              })));
+    } finally {
+      releaseKnowledgeBase(kbRef);
+    }
+  }
 
-    return kbManager.getKnowledgeBaseComponents(kbRef.getUuid(), kbRef.getVersionTag())
-        .flatList(Pointer.class, compPtr -> skosify(kbRef, compPtr, allprops))
-        .map(AbstractCompositeCarrier::ofUniformAggregate);
+  /**
+   * Creates the KB of a run, in a new workspace, with the parsed ontologies
+   * and their import structure
+   *
+   * @return the KB of the run
+   */
+  protected Pointer prepareKnowledgeBase(KnowledgeCarrier sourceArtifact, Properties props) {
+    KnowledgeBaseApiInternal workspace = newWorkspace();
+    Pointer kbRef = newKB(workspace);
+    Run run = new Run(workspace);
+
+    if (store != null) {
+      run.runKey = ContentHash.of(sourceArtifact)
+          .map(hash -> PersistentModelStore.keyOf(hash.getDigest(), new TreeMap<>(props)))
+          .orElse(null);
+    }
+
+    mapAll(sourceArtifact.components().collect(toList()), this::parse)
+        .forEach(KnowledgeCarrier.class, owl -> addToKnowledgeBase(workspace, kbRef, owl));
+
+    addStructureToKB(workspace, kbRef);
+
+    if (closureCache != null) {
+      Map<UUID, String> digests = new HashMap<>();
+      sourceArtifact.components()
+          .filter(comp -> comp.getAssetId() != null)
+          .forEach(comp -> ContentHash.of(comp)
+              .ifPresent(hash -> digests.put(comp.getAssetId().getUuid(), hash.getDigest())));
+      Answer<OntologyFamily> family = workspace
+          .getKnowledgeBaseManifestation(kbRef.getUuid(), kbRef.getVersionTag())
+          .map(kb -> new OntologyFamily(kb, digests));
+      run.family = family.isSuccess() ? family.get() : null;
+    }
+    // published before any component is processed
+    runs.put(kbRef.getUuid(), run);
+    return kbRef;
   }
 
+  protected Answer<List<Pointer>> getKnowledgeBaseComponents(Pointer kbRef) {
+    return run(kbRef).flatMap(run -> run.workspace
+        .getKnowledgeBaseComponents(kbRef.getUuid(), kbRef.getVersionTag()));
+  }
 
-  public Answer<KnowledgeCarrier> skosify(Pointer kBaseRef, Pointer ontoPtr, Properties props) {
-    Answer<Pointer> comp = extractOntologyComponent(kBaseRef, ontoPtr)
-        .flatMap(this::flattenKB);
+  protected void releaseKnowledgeBase(Pointer kbRef) {
+    // the merged closures are retained, for the next runs
+    Run run = runs.remove(kbRef.getUuid());
+    if (run != null) {
+      run.workspace.deleteKnowledgeBase(kbRef.getUuid());
+    }
+  }
+
+  private Answer<Run> run(Pointer kbRef) {
+    Run run = runs.get(kbRef.getUuid());
+    return run != null
+        ? Answer.of(run)
+        : Answer.failed(new IllegalStateException("No run in progress for KB " + kbRef));
+  }
 
-    Answer<KnowledgeCarrier> ans2 = comp
-        .flatMap(kbComp -> selectSKOS(kBaseRef, kbComp, props));
+  /**
+   * Applies an operation to each item, concurrently if a degree of parallelism has been set,
+   * without retaining the results. No operation is still running when this method returns.
+   *
+   * @return the number of items processed, or the first failure (in the order of the items)
+   */
+  protected <T> Answer<Integer> forAll(List<T> items, Function<T, Answer<Boolean>> op) {
+    if (executor == null) {
+      for (T item : items) {
+        Answer<Boolean> done = op.apply(item);
+        if (done.isFailure()) {
+          return done.map(failed -> 0);
+        }
+      }
+      return Answer.of(items.size());
+    }
+    for (Answer<Boolean> done : joinAll(items, op)) {
+      if (done.isFailure()) {
+        return done.map(failed -> 0);
+      }
+    }
+    return Answer.of(items.size());
+  }
+
+  /**
+   * Applies an operation to each item, concurrently if a degree of parallelism has been set,
+   * preserving the order of the items. No operation is still running when this method returns.
+   */
+  protected <T, R> Answer<List<R>> mapAll(List<T> items, Function<T, Answer<R>> op) {
+    if (executor == null) {
+      return items.stream()
+          .map(op)
+          .collect(Answer.toList());
+    }
+    return joinAll(items, op).stream()
+        .collect(Answer.toList());
+  }
+
+  private <T, R> List<Answer<R>> joinAll(List<T> items, Function<T, Answer<R>> op) {
+    List<CompletableFuture<Answer<R>>> pending = items.stream()
+        .map(item -> CompletableFuture.supplyAsync(() -> op.apply(item), executor)
+            .exceptionally(Answer::failed))
+        .collect(toList());
+    return pending.stream()
+        .map(CompletableFuture::join)
+        .collect(toList());
+  }
 
-    Answer<KnowledgeCarrier> ans1 = comp
-        .flatMap(o -> mireotOntology(o, props))
-        .flatMap(ptr -> owlToSkos(ptr, getSkosifierProperties(props, ontoPtr)));
 
-    return ans1.flatMap(x1 ->
-        ans2.flatMap(x2 -> jenaFlattener.flattenArtifact(
-            ofUniformAnonymousComposite(x1.getAssetId(), asList(x1, x2)),
-            x1.getAssetId().getUuid(),
-            null)));
+  /**
+   * Loads the SKOS scheme of a component from the persistent store, if any,
+   * skosifying (and storing) the component otherwise
+   */
+  protected Answer<KnowledgeCarrier> skosifyOrLoad(Pointer kBaseRef, Pointer ontoPtr,
+      Properties props) {
+    Run run = runs.get(kBaseRef.getUuid());
+    String runKey = store != null && run != null ? run.runKey : null;
+    if (runKey == null) {
+      return skosify(kBaseRef, ontoPtr, props);
+    }
+    String key = PersistentModelStore.keyOf("skos", runKey, ontoPtr.getUuid());
+    Optional<KnowledgeCarrier> stored = store.loadCarrier(key);
+    if (stored.isPresent()) {
+      return Answer.of(stored.get());
+    }
+    Answer<KnowledgeCarrier> skos = skosify(kBaseRef, ontoPtr, props);
+    if (skos.isSuccess()) {
+      store.storeCarrier(key, skos.get());
+    }
+    return skos;
   }
 
-  private Answer<KnowledgeCarrier> selectSKOS(
-      Pointer kBaseRef, Pointer onto, Properties props) {
-    return kbManager
+  public Answer<KnowledgeCarrier> skosify(Pointer kBaseRef, Pointer ontoPtr, Properties props) {
+    // The component is processed in a workspace of its own, so that the components can be
+    // skosified concurrently: its KBs are released once its SKOS scheme has been produced
+    KnowledgeBaseApiInternal workspace = newWorkspace();
+    try (KnowledgeBaseArena arena = KnowledgeBaseArena.open(workspace::deleteKnowledgeBase)) {
+      Answer<Pointer> comp = flattenOntologyComponent(workspace, kBaseRef, ontoPtr, arena)
+          .map(arena::track);
+
+      Answer<KnowledgeCarrier> ans2 = comp
+          .flatMap(kbComp -> selectSKOS(workspace, kbComp, props, arena));
+
+      Answer<KnowledgeCarrier> ans1 = comp
+          .flatMap(o -> mireotOntology(workspace, o, props))
+          .map(arena::track)
+          .flatMap(ptr -> owlToSkos(workspace, ptr, getSkosifierProperties(props, ontoPtr)));
+
+      return ans1.flatMap(x1 ->
+          ans2.flatMap(x2 -> jenaFlattener.get().flattenArtifact(
+              ofUniformAnonymousComposite(x1.getAssetId(), asList(x1, x2)),
+              x1.getAssetId().getUuid(),
+              null)));
+    }
+  }
+
+  private Answer<KnowledgeCarrier> selectSKOS(KnowledgeBaseApiInternal workspace,
+      Pointer onto, Properties props, KnowledgeBaseArena arena) {
+    return workspace
         .namedSelect(onto.getUuid(), onto.getVersionTag(),
             JenaSKOSSelector.id, null, PropertiesUtil.serializeProps(props))
-        .flatMap(ptr -> kbManager
+        .map(arena::track)
+        .flatMap(ptr -> workspace
             .getKnowledgeBaseManifestation(ptr.getUuid(), ptr.getVersionTag()));
   }
 
 
-  protected Answer<KnowledgeCarrier> owlToSkos(Pointer ptr, Properties cfg) {
-    return kbManager
+  protected Answer<KnowledgeCarrier> owlToSkos(KnowledgeBaseApiInternal workspace,
+      Pointer ptr, Properties cfg) {
+    return workspace
         .getKnowledgeBaseManifestation(ptr.getUuid(), ptr.getVersionTag())
-        .flatMap(kc -> skosifier.applyTransrepresent(
+        .flatMap(kc -> skosifier.get().applyTransrepresent(
             kc,
             ModelMIMECoder.encode(rep(OWL_2)),
             PropertiesUtil.serializeProps(cfg)));
   }
 
-  protected Answer<Pointer> mireotOntology(Pointer flatPtr, Properties props) {
-    return kbManager
+  protected Answer<Pointer> mireotOntology(KnowledgeBaseApiInternal workspace,
+      Pointer flatPtr, Properties props) {
+    return workspace
         .namedSelect(flatPtr.getUuid(), flatPtr.getVersionTag(),
             SparqlSelector.id, selectQuery, PropertiesUtil.serializeProps(props));
   }
 
-  protected Answer<Pointer> flattenKB(Pointer pivotKB) {
-    return kbManager.flatten(pivotKB.getUuid(), pivotKB.getVersionTag(), null);
+  /**
+   * Creates a KB, in the given workspace, with the given ontology component, and its import
+   * closure. Uses the (shared) closure graphs when a closure cache is configured,
+   * falling back to the physical flattening of the extracted component otherwise.
+   * A flattened component is then frozen, if compact graphs are enabled.
+   */
+  protected Answer<Pointer> flattenOntologyComponent(KnowledgeBaseApiInternal workspace,
+      Pointer kBaseRef, Pointer ontoPtr, KnowledgeBaseArena arena) {
+    Run run = runs.get(kBaseRef.getUuid());
+    OntologyFamily family = closureCache != null && run != null ? run.family : null;
+    if (family != null) {
+      Optional<Graph> closure = family.importClosure(ontoPtr.getUuid(), closureCache);
+      if (closure.isPresent()) {
+        return workspace.initKnowledgeBase(
+            ofAst(ModelFactory.createModelForGraph(closure.get()), rep(OWL_2))
+                .withAssetId(newId(UUID.randomUUID(), ontoPtr.getVersionTag())),
+            null);
+      }
+    }
+    Answer<Pointer> flat = extractOntologyComponent(kBaseRef, ontoPtr)
+        .flatMap(extracted -> workspace.initKnowledgeBase(extracted, null))
+        .map(arena::track)
+        .flatMap(ptr -> flattenKB(workspace, ptr));
+    return compactGraphs
+        ? flat.flatMap(ptr -> freezeKB(workspace, ptr, ontoPtr, arena))
+        : flat;
   }
 
-  protected Answer<Pointer> extractOntologyComponent(Pointer kBaseRef, Pointer ontoPtr) {
-    return kbManager.extract(kBaseRef.getUuid(), kBaseRef.getVersionTag(), ontoPtr.getUuid(), null);
+  /**
+   * Replaces the given KB with a KB holding a compact, read-only copy of its
+   * (flattened) ontology. The given KB is released through the arena before the copy
+   * is registered, so that the workspace never holds both. The flattening may return
+   * the (already tracked) pivot KB itself: the arena deletes it exactly once either way.
+   */
+  protected Answer<Pointer> freezeKB(KnowledgeBaseApiInternal workspace, Pointer flatKB,
+      Pointer ontoPtr, KnowledgeBaseArena arena) {
+    Answer<Model> flat = workspace
+        .getKnowledgeBaseManifestation(flatKB.getUuid(), flatKB.getVersionTag())
+        .flatOpt(kc -> kc.as(Model.class));
+    arena.track(flatKB);
+    arena.release(flatKB.getUuid());
+    return flat.flatMap(model -> workspace.initKnowledgeBase(
+        ofAst(CompactGraph.freeze(model), rep(OWL_2))
+            .withAssetId(newId(UUID.randomUUID(), ontoPtr.getVersionTag())),
+        null));
   }
 
+  protected Answer<Pointer> flattenKB(KnowledgeBaseApiInternal workspace, Pointer pivotKB) {
+    return workspace.flatten(pivotKB.getUuid(), pivotKB.getVersionTag(), null);
+  }
 
-  protected void addStructureToKB(Pointer kbRef) {
+  /**
+   * @return the ontology component, with the ontologies it imports, extracted from the KB
+   * of the run. The extracted KB is released right away: only its carrier is retained.
+   * The extractions of the components of a run are serialized, since they share the
+   * workspace of the run; the extractions of different runs are not.
+   */
+  protected Answer<KnowledgeCarrier> extractOntologyComponent(Pointer kBaseRef,
+      Pointer ontoPtr) {
+    return run(kBaseRef).flatMap(run -> {
+      synchronized (run) {
+        return run.workspace
+            .extract(kBaseRef.getUuid(), kBaseRef.getVersionTag(), ontoPtr.getUuid(), null)
+            .flatMap(ptr -> {
+              Answer<KnowledgeCarrier> extracted = run.workspace
+                  .getKnowledgeBaseManifestation(ptr.getUuid(), ptr.getVersionTag());
+              run.workspace.deleteKnowledgeBase(ptr.getUuid());
+              return extracted;
+            });
+      }
+    });
+  }
+
+
+  protected void addStructureToKB(KnowledgeBaseApiInternal workspace, Pointer kbRef) {
+    _getKnowledgeBaseStructure constructor = new JenaOwlImportConstructor(workspace);
     constructor.getKnowledgeBaseStructure(kbRef.getUuid(), kbRef.getVersionTag(), null)
-        .flatMap(struct -> kbManager
+        .flatMap(struct -> workspace
             .setKnowledgeBaseStructure(kbRef.getUuid(), kbRef.getVersionTag(), struct));
   }
 
-  protected Pointer newKB() {
-    return kbManager.initKnowledgeBase().orElseThrow(IllegalStateException::new);
+  protected Pointer newKB(KnowledgeBaseApiInternal workspace) {
+    return workspace.initKnowledgeBase().orElseThrow(IllegalStateException::new);
   }
 
   protected Answer<KnowledgeCarrier> parse(KnowledgeCarrier binaryOntology) {
-    return parser.applyLift(binaryOntology,
+    Optional<String> key = store != null && binaryOntology.getAssetId() != null
+        ? ContentHash.of(binaryOntology).map(hash -> PersistentModelStore.keyOf(
+            "owl", binaryOntology.getAssetId().getVersionId(), hash.getDigest()))
+        : Optional.empty();
+    if (key.isPresent()) {
+      Optional<KnowledgeCarrier> stored = store.loadCarrier(key.get());
+      if (stored.isPresent()) {
+        return Answer.of(stored.get());
+      }
+    }
+
+    Answer<KnowledgeCarrier> parsed = parser.get().applyLift(binaryOntology,
         Abstract_Knowledge_Expression,
         ModelMIMECoder.encode(rep(OWL_2)), null);
+
+    if (key.isPresent() && parsed.isSuccess()) {
+      store.storeCarrier(key.get(), parsed.get());
+    }
+    return parsed;
   }
 
-  protected void addToKnowledgeBase(Pointer kbRef, KnowledgeCarrier parsedOntology) {
-    kbManager.populateKnowledgeBase(kbRef.getUuid(), kbRef.getVersionTag(), parsedOntology);
+  protected void addToKnowledgeBase(KnowledgeBaseApiInternal workspace, Pointer kbRef,
+      KnowledgeCarrier parsedOntology) {
+    workspace.populateKnowledgeBase(kbRef.getUuid(), kbRef.getVersionTag(), parsedOntology);
   }
 
 
   protected Properties getSkosifierProperties(Properties props, Pointer ptr) {
+    // the props are shared by all the components: configure a copy
+    Properties cfg = new Properties();
+    cfg.putAll(props);
     String name = ptr.getName();
-    props.put(OWLtoSKOSTxParams.SCHEME_NAME.getName(), name);
-    props.put(OWLtoSKOSTxParams.TOP_CONCEPT_NAME.getName(), name);
-    return props;
+    cfg.put(OWLtoSKOSTxParams.SCHEME_NAME.getName(), name);
+    cfg.put(OWLtoSKOSTxParams.TOP_CONCEPT_NAME.getName(), name);
+    return cfg;
   }
 
+  /**
+   * The state of a run, shared by its components: the workspace with the KB of its
+   * ontologies. A run is also the lock that serializes the extractions of its components.
+   */
+  private static final class Run {
+
+    final KnowledgeBaseApiInternal workspace;
+    // the keys of the persisted SKOS schemes, if any
+    String runKey;
+    // the ontologies, for the merged import closures, if any
+    OntologyFamily family;
+
+    Run(KnowledgeBaseApiInternal workspace) {
+      this.workspace = workspace;
+    }
+  }
 
 }
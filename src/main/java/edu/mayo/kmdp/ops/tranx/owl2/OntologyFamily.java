@@ -0,0 +1,174 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.tranx.owl2;
+
+import edu.mayo.kmdp.ops.cache.BoundedCache;
+import edu.mayo.kmdp.ops.rdf.CompactGraph;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.compose.MultiUnion;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.ResIterator;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.apache.jena.vocabulary.OWL2;
+import org.apache.jena.vocabulary.RDF;
+import org.omg.spec.api4kp._20200801.services.KnowledgeCarrier;
+
+/**
+ * The (parsed) ontologies in a Knowledge Base, indexed by IRI, with their owl:imports.
+ *
+ * The import closure of an ontology is merged into a {@link CompactGraph}, which is cached
+ * by the content digests of the ontologies in the closure, so that it can be reused by the
+ * components, and the runs, with the same closure. Closures whose content cannot be digested
+ * are not merged, but exposed as a union of the graphs of the ontologies in the closure.
+ * Each use gets a new union, whose writes, if any, go to a private base graph, so that
+ * the (shared) graphs are never modified.
+ */
+class OntologyFamily {
+
+  private final Map<String, Ontology> byIri = new HashMap<>();
+  private final Map<UUID, Ontology> byAsset = new HashMap<>();
+
+  /**
+   * @param kb      the parsed ontologies
+   * @param digests the digests of the (serialized) content of the ontologies, by asset id
+   */
+  OntologyFamily(KnowledgeCarrier kb, Map<UUID, String> digests) {
+    kb.components()
+        .forEach(comp -> comp.as(Model.class)
+            .flatMap(m -> describe(m, comp.getAssetId() != null
+                ? digests.get(comp.getAssetId().getUuid())
+                : null))
+            .ifPresent(onto -> {
+              byIri.put(onto.iri, onto);
+              if (comp.getAssetId() != null) {
+                byAsset.put(comp.getAssetId().getUuid(), onto);
+              }
+            }));
+  }
+
+  /**
+   * @param assetId the asset id of an ontology component
+   * @param cache   the closures merged so far, in this or previous runs
+   * @return a new union of the ontology and its (transitive) imports, if the ontology is known
+   */
+  Optional<Graph> importClosure(UUID assetId, BoundedCache<String, CompactGraph> cache) {
+    Ontology root = byAsset.get(assetId);
+    if (root == null) {
+      return Optional.empty();
+    }
+    Set<Ontology> closure = closureOf(root);
+    String key = cacheKey(closure);
+
+    Graph base = GraphFactory.createDefaultGraph();
+    MultiUnion union = new MultiUnion();
+    union.addGraph(base);
+    union.setBaseGraph(base);
+    if (key == null) {
+      closure.forEach(onto -> union.addGraph(onto.graph));
+      return Optional.of(union);
+    }
+    Optional<CompactGraph> cached = cache.get(key);
+    CompactGraph merged;
+    if (cached.isPresent()) {
+      merged = cached.get();
+    } else {
+      merged = merge(closure);
+      cache.put(key, merged);
+    }
+    union.addGraph(merged);
+    return Optional.of(union);
+  }
+
+  private static CompactGraph merge(Set<Ontology> closure) {
+    MultiUnion all = new MultiUnion();
+    closure.forEach(onto -> all.addGraph(onto.graph));
+    return CompactGraph.copyOf(all);
+  }
+
+  private Set<Ontology> closureOf(Ontology root) {
+    Set<Ontology> closure = new LinkedHashSet<>();
+    Deque<Ontology> queue = new ArrayDeque<>();
+    queue.add(root);
+    while (!queue.isEmpty()) {
+      Ontology onto = queue.poll();
+      if (closure.add(onto)) {
+        onto.imports.stream()
+            .map(byIri::get)
+            .filter(Objects::nonNull)
+            .forEach(queue::add);
+      }
+    }
+    return closure;
+  }
+
+  /**
+   * The closure can only be shared if the content of all its ontologies has been digested
+   */
+  private String cacheKey(Set<Ontology> closure) {
+    Set<String> digests = new TreeSet<>();
+    for (Ontology onto : closure) {
+      if (onto.digest == null) {
+        return null;
+      }
+      digests.add(onto.digest);
+    }
+    return String.join(" ", digests);
+  }
+
+  private static Optional<Ontology> describe(Model m, String digest) {
+    ResIterator heads = m.listSubjectsWithProperty(RDF.type, OWL2.Ontology);
+    if (!heads.hasNext()) {
+      return Optional.empty();
+    }
+    Resource head = heads.next();
+    if (!head.isURIResource()) {
+      return Optional.empty();
+    }
+    Set<String> imports = new LinkedHashSet<>();
+    head.listProperties(OWL2.imports)
+        .forEachRemaining(st -> {
+          if (st.getObject().isURIResource()) {
+            imports.add(st.getObject().asResource().getURI());
+          }
+        });
+    return Optional.of(new Ontology(head.getURI(), digest, imports, m.getGraph()));
+  }
+
+  private static final class Ontology {
+
+    final String iri;
+    final String digest;
+    final Set<String> imports;
+    final Graph graph;
+
+    Ontology(String iri, String digest, Set<String> imports, Graph graph) {
+      this.iri = iri;
+      this.digest = digest;
+      this.imports = imports;
+      this.graph = graph;
+    }
+  }
+
+}
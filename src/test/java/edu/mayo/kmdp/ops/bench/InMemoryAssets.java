@@ -0,0 +1,107 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.bench;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import org.omg.spec.api4kp._20200801.Answer;
+import org.omg.spec.api4kp._20200801.api.inference.v4.server.ReasoningApiInternal._askQuery;
+import org.omg.spec.api4kp._20200801.api.repository.asset.v4.KnowledgeAssetCatalogApi;
+import org.omg.spec.api4kp._20200801.api.repository.asset.v4.KnowledgeAssetRepositoryApi;
+import org.omg.spec.api4kp._20200801.datatypes.Bindings;
+import org.omg.spec.api4kp._20200801.services.KnowledgeCarrier;
+
+/**
+ * Offline, in-memory stand-ins for the asset catalog and repository.
+ *
+ * The stand-ins serve the registered carriers from any 'get...Carrier(assetId, versionTag, ..)'
+ * operation, and fail any other operation that returns an Answer.
+ */
+public class InMemoryAssets {
+
+  private final Map<String, KnowledgeCarrier> carriers = new ConcurrentHashMap<>();
+
+  public InMemoryAssets register(KnowledgeCarrier kc) {
+    carriers.put(key(kc.getAssetId().getUuid(), kc.getAssetId().getVersionTag()), kc);
+    kc.components()
+        .filter(comp -> comp != kc)
+        .forEach(this::register);
+    return this;
+  }
+
+  public KnowledgeAssetCatalogApi catalog() {
+    return standIn(KnowledgeAssetCatalogApi.class);
+  }
+
+  public KnowledgeAssetRepositoryApi repository() {
+    return standIn(KnowledgeAssetRepositoryApi.class);
+  }
+
+  /**
+   * @return a data shape query that returns a single, empty set of bindings
+   */
+  public static _askQuery emptyDataShapes() {
+    return (lambdaId, versionTag, query, xParams) -> Answer.of(List.of(new Bindings<>()));
+  }
+
+  private <T> T standIn(Class<T> api) {
+    return api.cast(Proxy.newProxyInstance(
+        api.getClassLoader(),
+        new Class<?>[]{api},
+        (proxy, method, args) -> handle(proxy, method, args)));
+  }
+
+  private Object handle(Object proxy, Method method, Object[] args) throws Throwable {
+    if (method.getDeclaringClass() == Object.class) {
+      switch (method.getName()) {
+        case "equals":
+          return proxy == args[0];
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        default:
+          return "InMemoryAssets stand-in";
+      }
+    }
+    if (method.isDefault()) {
+      Class<?> api = method.getDeclaringClass();
+      return MethodHandles.privateLookupIn(api, MethodHandles.lookup())
+          .unreflectSpecial(method, api)
+          .bindTo(proxy)
+          .invokeWithArguments(args != null ? args : new Object[0]);
+    }
+    if (!Answer.class.isAssignableFrom(method.getReturnType())) {
+      return null;
+    }
+    if (method.getName().endsWith("Carrier")
+        && args != null && args.length >= 2
+        && args[0] instanceof UUID && args[1] instanceof String) {
+      KnowledgeCarrier kc = carriers.get(key((UUID) args[0], (String) args[1]));
+      return kc != null
+          ? Answer.of(kc)
+          : Answer.failed(new NoSuchElementException(args[0] + ":" + args[1]));
+    }
+    return Answer.failed(new UnsupportedOperationException(method.getName()));
+  }
+
+  private static String key(UUID id, String versionTag) {
+    return id + ":" + versionTag;
+  }
+
+}
@@ -0,0 +1,242 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.bench;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.omg.spec.api4kp._20200801.AbstractCarrier.rep;
+import static org.omg.spec.api4kp._20200801.AbstractCompositeCarrier.ofMixedAnonymousComposite;
+import static org.omg.spec.api4kp._20200801.AbstractCompositeCarrier.ofUniformAggregate;
+import static org.omg.spec.api4kp._20200801.AbstractCompositeCarrier.ofUniformAnonymousComposite;
+import static org.omg.spec.api4kp._20200801.taxonomy.krformat.SerializationFormatSeries.XML_1_1;
+import static org.omg.spec.api4kp._20200801.taxonomy.krlanguage.KnowledgeRepresentationLanguageSeries.CMMN_1_1;
+import static org.omg.spec.api4kp._20200801.taxonomy.krlanguage.KnowledgeRepresentationLanguageSeries.DMN_1_2;
+import static org.omg.spec.api4kp._20200801.taxonomy.krlanguage.KnowledgeRepresentationLanguageSeries.FHIR_STU3;
+import static org.omg.spec.api4kp._20200801.taxonomy.krlanguage.KnowledgeRepresentationLanguageSeries.OWL_2;
+import static org.omg.spec.api4kp._20200801.taxonomy.krserialization.KnowledgeRepresentationLanguageSerializationSeries.RDF_XML_Syntax;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.vocabulary.OWL2;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+import org.hl7.fhir.dstu3.model.Coding;
+import org.hl7.fhir.dstu3.model.Questionnaire;
+import org.hl7.fhir.dstu3.model.Questionnaire.QuestionnaireItemComponent;
+import org.hl7.fhir.dstu3.model.Questionnaire.QuestionnaireItemType;
+import org.omg.spec.api4kp._20200801.AbstractCarrier;
+import org.omg.spec.api4kp._20200801.id.ResourceIdentifier;
+import org.omg.spec.api4kp._20200801.id.SemanticIdentifier;
+import org.omg.spec.api4kp._20200801.services.KnowledgeCarrier;
+import org.omg.spec.api4kp._20200801.services.SyntacticRepresentation;
+
+/**
+ * Generators of synthetic, deterministic models of configurable size
+ */
+public final class SyntheticComposites {
+
+  public static final String VERSION = "1.0.0";
+
+  private static final String DMN_NS = "https://www.omg.org/spec/DMN/20180521/MODEL/";
+  private static final String CMMN_NS = "http://www.omg.org/spec/CMMN/20151109/MODEL";
+  private static final String ONTO_BASE = "http://test.mayo.edu/bench/onto/";
+
+  private SyntheticComposites() {
+    // static generators only
+  }
+
+  /**
+   * A composite of CMMN case models and DMN decision models.
+   * Each DMN model j imports the models j+1 .. j+fanOut (when they exist), so that
+   * the imports form a DAG; each case model i references a decision in model (i % M).
+   *
+   * @param cases          the number (N) of CMMN case models
+   * @param decisionModels the number (M) of DMN decision models
+   * @param fanOut         the number (K) of models imported by each DMN model
+   * @return a composite of serialized CMMN/DMN models, rooted in the first case (or decision) model
+   */
+  public static KnowledgeCarrier decisionComposite(int cases, int decisionModels, int fanOut) {
+    List<KnowledgeCarrier> comps = new ArrayList<>(cases + decisionModels);
+    for (int i = 0; i < cases; i++) {
+      comps.add(carrier(assetId("cmmn", i), "Case Model " + i,
+          caseModel(i, decisionModels), rep(CMMN_1_1, XML_1_1)));
+    }
+    for (int j = 0; j < decisionModels; j++) {
+      comps.add(carrier(assetId("dmn", j), "Decision Model " + j,
+          decisionModel(j, decisionModels, fanOut), rep(DMN_1_2, XML_1_1)));
+    }
+    return ofMixedAnonymousComposite(comps.get(0).getAssetId(), comps);
+  }
+
+  /**
+   * @param forms        the number of Questionnaires
+   * @param itemsPerForm the number of (coded) items in each Questionnaire
+   * @param vocabulary   the number of distinct codes, shared across the Questionnaires
+   * @return an aggregate of parsed FHIR STU3 Questionnaires
+   */
+  public static KnowledgeCarrier questionnaireBundle(int forms, int itemsPerForm, int vocabulary) {
+    List<KnowledgeCarrier> comps = new ArrayList<>(forms);
+    for (int f = 0; f < forms; f++) {
+      comps.add(AbstractCarrier.ofAst(questionnaire(f, itemsPerForm, vocabulary), rep(FHIR_STU3))
+          .withAssetId(assetId("questionnaire", f)));
+    }
+    return ofUniformAggregate(comps);
+  }
+
+  /**
+   * A family of OWL ontologies, arranged in import chains of the given length, where the
+   * head of each chain imports a common upper ontology (which is the first component)
+   *
+   * @param ontologies  the number of ontologies, including the upper one
+   * @param chainLength the length of each import chain
+   * @param classes     the number of classes declared by each ontology
+   * @return a composite of serialized (RDF/XML) OWL ontologies
+   */
+  public static KnowledgeCarrier ontologyFamily(int ontologies, int chainLength, int classes) {
+    List<KnowledgeCarrier> comps = new ArrayList<>(ontologies);
+    for (int o = 0; o < ontologies; o++) {
+      List<Integer> imports = new ArrayList<>();
+      if (o > 0) {
+        int pos = (o - 1) % chainLength;
+        if (pos == 0) {
+          imports.add(0);
+        }
+        if (pos < chainLength - 1 && o + 1 < ontologies) {
+          imports.add(o + 1);
+        }
+      }
+      comps.add(carrier(assetId("owl", o), "Ontology " + o,
+          ontology(o, imports, classes), rep(OWL_2, RDF_XML_Syntax, XML_1_1)));
+    }
+    return ofUniformAnonymousComposite(comps.get(0).getAssetId(), comps);
+  }
+
+  public static ResourceIdentifier assetId(String kind, int j) {
+    return SemanticIdentifier.newId(uuid(kind, j), VERSION);
+  }
+
+  private static UUID uuid(String kind, int j) {
+    return UUID.nameUUIDFromBytes((kind + "#" + j).getBytes(UTF_8));
+  }
+
+  private static String namespace(String kind, int j) {
+    return assetId(kind, j).getVersionId().toString();
+  }
+
+  private static KnowledgeCarrier carrier(ResourceIdentifier assetId, String label,
+      String content, SyntacticRepresentation rep) {
+    return AbstractCarrier.of(content.getBytes(UTF_8))
+        .withAssetId(assetId)
+        .withArtifactId(SemanticIdentifier.newId(uuid("artifact:" + label, 0), VERSION))
+        .withLabel(label)
+        .withRepresentation(rep);
+  }
+
+  private static String decisionModel(int j, int models, int fanOut) {
+    StringBuilder sb = new StringBuilder(1024)
+        .append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+        .append("<definitions xmlns=\"").append(DMN_NS).append("\"")
+        .append(" id=\"_").append(uuid("dmn", j)).append("\"")
+        .append(" name=\"Decision Model ").append(j).append("\"")
+        .append(" namespace=\"").append(namespace("dmn", j)).append("\">\n");
+    int last = Math.min(models - 1, j + fanOut);
+    for (int k = j + 1; k <= last; k++) {
+      sb.append("  <import namespace=\"").append(namespace("dmn", k)).append("\"")
+          .append(" name=\"Model").append(k).append("\"")
+          .append(" importType=\"").append(DMN_NS).append("\"/>\n");
+    }
+    for (int d = 0; d < 3; d++) {
+      sb.append("  <decision id=\"_d").append(j).append('_').append(d).append("\"")
+          .append(" name=\"Decision ").append(j).append('.').append(d).append("\">\n")
+          .append("    <variable name=\"Decision ").append(j).append('.').append(d)
+          .append("\" typeRef=\"boolean\"/>\n");
+      for (int k = j + 1; k <= last; k++) {
+        sb.append("    <informationRequirement>")
+            .append("<requiredDecision href=\"").append(namespace("dmn", k))
+            .append("#_d").append(k).append("_0\"/>")
+            .append("</informationRequirement>\n");
+      }
+      sb.append("  </decision>\n");
+    }
+    return sb.append("</definitions>\n").toString();
+  }
+
+  private static String caseModel(int i, int models) {
+    int m = models > 0 ? i % models : 0;
+    return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+        + "<definitions xmlns=\"" + CMMN_NS + "\""
+        + " id=\"_" + uuid("cmmn", i) + "\""
+        + " name=\"Case Model " + i + "\""
+        + " targetNamespace=\"" + namespace("cmmn", i) + "\">\n"
+        + (models > 0
+        ? "  <decision id=\"_dref" + i + "\" name=\"Decision " + m + ".0\""
+        + " externalRef=\"" + namespace("dmn", m) + "#_d" + m + "_0\"/>\n"
+        : "")
+        + "  <case id=\"_case" + i + "\" name=\"Case " + i + "\">\n"
+        + "    <casePlanModel id=\"_cpm" + i + "\" name=\"Case " + i + "\">\n"
+        + (models > 0
+        ? "      <planItem id=\"_pi" + i + "\" definitionRef=\"_dt" + i + "\"/>\n"
+        + "      <decisionTask id=\"_dt" + i + "\" name=\"Decide " + i + "\""
+        + " decisionRef=\"_dref" + i + "\"/>\n"
+        : "")
+        + "    </casePlanModel>\n"
+        + "  </case>\n"
+        + "</definitions>\n";
+  }
+
+  private static Questionnaire questionnaire(int f, int items, int vocabulary) {
+    Questionnaire q = new Questionnaire();
+    q.setId("q" + f);
+    q.setUrl(ONTO_BASE + "questionnaire/" + f);
+    q.setName("Questionnaire" + f);
+    for (int i = 0; i < items; i++) {
+      int code = (f * 31 + i * 7) % vocabulary;
+      QuestionnaireItemComponent item = q.addItem()
+          .setLinkId(f + "." + i)
+          .setType(QuestionnaireItemType.BOOLEAN)
+          .setText("Question " + f + "." + i);
+      item.addCode(new Coding("http://loinc.org", "LP" + code, "Concept " + code));
+    }
+    return q;
+  }
+
+  private static String ontology(int o, List<Integer> imports, int classes) {
+    Model m = ModelFactory.createDefaultModel();
+    String iri = ONTO_BASE + o;
+    Resource onto = m.createResource(iri)
+        .addProperty(RDF.type, OWL2.Ontology)
+        .addProperty(OWL2.versionIRI, m.createResource(iri + "/" + VERSION));
+    for (int imp : imports) {
+      onto.addProperty(OWL2.imports, m.createResource(ONTO_BASE + imp));
+    }
+    for (int c = 0; c < classes; c++) {
+      Resource cls = m.createResource(iri + "#C" + c)
+          .addProperty(RDF.type, OWL2.Class)
+          .addProperty(RDFS.label, "Class " + o + "." + c);
+      if (c > 0) {
+        cls.addProperty(RDFS.subClassOf, m.createResource(iri + "#C" + (c - 1) / 2));
+      } else if (!imports.isEmpty()) {
+        cls.addProperty(RDFS.subClassOf, m.createResource(ONTO_BASE + imports.get(0) + "#C0"));
+      }
+    }
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    m.write(baos, "RDF/XML");
+    return new String(baos.toByteArray(), UTF_8);
+  }
+
+}
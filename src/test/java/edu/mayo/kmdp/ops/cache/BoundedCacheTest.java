@@ -0,0 +1,106 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+
+class BoundedCacheTest {
+
+  @Test
+  void testLeastRecentlyUsedEviction() {
+    BoundedCache<String, Integer> cache = BoundedCache.lru(2);
+    cache.put("a", 1);
+    cache.put("b", 2);
+    // a is now more recently used than b
+    assertEquals(Optional.of(1), cache.get("a"));
+    cache.put("c", 3);
+
+    assertEquals(2, cache.size());
+    assertTrue(cache.get("a").isPresent());
+    assertFalse(cache.get("b").isPresent());
+    assertTrue(cache.get("c").isPresent());
+    assertEquals(1, cache.evictionCount());
+  }
+
+  @Test
+  void testWeightedEviction() {
+    BoundedCache<String, String> cache = BoundedCache.weighted(10, (k, v) -> v.length());
+    cache.put("a", "12345");
+    cache.put("b", "1234");
+    assertEquals(9, cache.weight());
+
+    cache.put("c", "12");
+    assertEquals(6, cache.weight());
+    assertFalse(cache.get("a").isPresent());
+
+    // replacing an entry replaces its weight
+    cache.put("b", "1");
+    assertEquals(3, cache.weight());
+  }
+
+  @Test
+  void testInvalidation() {
+    BoundedCache<String, Integer> cache = BoundedCache.lru(10);
+    cache.put("x1", 1);
+    cache.put("x2", 2);
+    cache.put("y1", 3);
+
+    cache.invalidateIf(k -> k.startsWith("x"));
+    assertEquals(1, cache.size());
+    assertEquals(1, cache.weight());
+
+    cache.invalidate("y1");
+    assertEquals(0, cache.size());
+
+    cache.put("z", 4);
+    cache.invalidateAll();
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.weight());
+  }
+
+  @Test
+  void testInvalidationByValue() {
+    BoundedCache<String, Integer> cache = BoundedCache.lru(10);
+    cache.put("a", 1);
+    cache.put("b", 2);
+    cache.put("c", 3);
+
+    cache.invalidateEntries((k, v) -> v % 2 == 1);
+    assertEquals(1, cache.size());
+    assertEquals(Optional.of(2), cache.get("b"));
+  }
+
+  @Test
+  void testStatistics() {
+    BoundedCache<String, Integer> cache = BoundedCache.lru(10);
+    cache.put("a", 1);
+    cache.get("a");
+    cache.get("a");
+    cache.get("b");
+    assertEquals(2, cache.hitCount());
+    assertEquals(1, cache.missCount());
+  }
+
+  @Test
+  void testInvalidBound() {
+    assertThrows(IllegalArgumentException.class, () -> BoundedCache.lru(0));
+  }
+
+}
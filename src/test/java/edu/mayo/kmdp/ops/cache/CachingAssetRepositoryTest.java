@@ -0,0 +1,97 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.cache;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.omg.spec.api4kp._20200801.id.SemanticIdentifier.newId;
+
+import edu.mayo.kmdp.ops.bench.InMemoryAssets;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.omg.spec.api4kp._20200801.AbstractCarrier;
+import org.omg.spec.api4kp._20200801.api.repository.asset.v4.KnowledgeAssetRepositoryApi;
+import org.omg.spec.api4kp._20200801.id.ResourceIdentifier;
+import org.omg.spec.api4kp._20200801.services.KnowledgeCarrier;
+
+class CachingAssetRepositoryTest {
+
+  private final ResourceIdentifier assetId = newId(UUID.randomUUID(), "1.0.0");
+
+  @Test
+  void testCarriersAreRetrievedOnceAndCopied() {
+    InMemoryAssets assets = new InMemoryAssets().register(carrier("v1"));
+    CachingAssetRepository cache =
+        new CachingAssetRepository(assets.repository(), 10, CachingAssetRepositoryTest::copy);
+
+    KnowledgeCarrier first = retrieve(cache);
+    KnowledgeCarrier second = retrieve(cache);
+    assertNotSame(first, second);
+    assertSame(first.getExpression(), second.getExpression());
+    assertEquals(1, cache.size());
+
+    // a published version is immutable: the repository is not read again
+    assets.register(carrier("v2"));
+    assertEquals("v1", text(retrieve(cache)));
+
+    cache.invalidate(assetId.getUuid());
+    assertEquals("v2", text(retrieve(cache)));
+  }
+
+  @Test
+  void testRepositoryAdapterRoutesToTheCache() {
+    InMemoryAssets assets = new InMemoryAssets().register(carrier("v1"));
+    CachingAssetRepository cache =
+        new CachingAssetRepository(assets.repository(), 10, CachingAssetRepositoryTest::copy);
+    KnowledgeAssetRepositoryApi repo = cache.asRepository();
+
+    KnowledgeCarrier kc = repo.getKnowledgeAssetVersionCanonicalCarrier(
+        assetId.getUuid(), assetId.getVersionTag(), null).get();
+    assertEquals("v1", text(kc));
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  void testFailuresAreNotCached() {
+    CachingAssetRepository cache = new CachingAssetRepository(
+        new InMemoryAssets().repository(), 10, CachingAssetRepositoryTest::copy);
+    assertTrue(cache.getKnowledgeAssetVersionCanonicalCarrier(
+        assetId.getUuid(), assetId.getVersionTag(), null).isFailure());
+    assertEquals(0, cache.size());
+  }
+
+  private KnowledgeCarrier retrieve(CachingAssetRepository cache) {
+    return cache.getKnowledgeAssetVersionCanonicalCarrier(
+        assetId.getUuid(), assetId.getVersionTag(), null).get();
+  }
+
+  private KnowledgeCarrier carrier(String content) {
+    return AbstractCarrier.of(content.getBytes(UTF_8))
+        .withAssetId(assetId);
+  }
+
+  private static String text(KnowledgeCarrier kc) {
+    return new String((byte[]) kc.getExpression(), UTF_8);
+  }
+
+  private static KnowledgeCarrier copy(KnowledgeCarrier kc) {
+    return new KnowledgeCarrier()
+        .withAssetId(kc.getAssetId())
+        .withExpression(kc.getExpression());
+  }
+
+}
@@ -0,0 +1,198 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.omg.spec.api4kp._20200801.AbstractCarrier.ofAst;
+import static org.omg.spec.api4kp._20200801.AbstractCarrier.rep;
+import static org.omg.spec.api4kp._20200801.taxonomy.krlanguage.KnowledgeRepresentationLanguageSeries.OWL_2;
+
+import edu.mayo.kmdp.ops.cache.LexiconCache.Lexicon;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.vocabulary.RDFS;
+import org.apache.jena.vocabulary.SKOS;
+import org.junit.jupiter.api.Test;
+import org.omg.spec.api4kp._20200801.Answer;
+import org.omg.spec.api4kp._20200801.services.KnowledgeCarrier;
+
+class LexiconCacheTest {
+
+  static final URI VOCAB_V1 = URI.create("http://test/vocab/versions/1.0.0");
+  static final URI VOCAB_V2 = URI.create("http://test/vocab/versions/2.0.0");
+  static final URI OTHER = URI.create("http://test/other/versions/1.0.0");
+  static final URI CONCEPT = URI.create("http://test/vocab#c1");
+
+  @Test
+  void testLoadOnceThenHit() {
+    AtomicInteger calls = new AtomicInteger();
+    try (LexiconCache cache = new LexiconCache(LexiconCache.DEFAULT_TTL)) {
+      Function<URI[], Answer<KnowledgeCarrier>> loader = uris -> {
+        calls.incrementAndGet();
+        return Answer.of(lexicon("C1"));
+      };
+      KnowledgeCarrier first = cache.getLexica(new URI[]{VOCAB_V1}, loader).get();
+      KnowledgeCarrier second = cache.getLexica(new URI[]{VOCAB_V1}, loader).get();
+
+      assertSame(first, second);
+      assertEquals(1, calls.get());
+      assertEquals(1, cache.loadCount());
+      assertEquals(1, cache.hitCount());
+    }
+  }
+
+  @Test
+  void testLabelIndex() {
+    Model m = ModelFactory.createDefaultModel();
+    Resource c1 = m.createResource(CONCEPT.toString());
+    c1.addProperty(RDFS.label, "generic");
+    c1.addProperty(SKOS.prefLabel, "preferred");
+    m.createResource("http://test/vocab#c2").addProperty(RDFS.label, "other");
+
+    try (LexiconCache cache = new LexiconCache(LexiconCache.DEFAULT_TTL)) {
+      Lexicon lex = cache.getLexicon(new URI[]{VOCAB_V1},
+          uris -> Answer.of(ofAst(m, rep(OWL_2)))).get();
+
+      assertEquals(2, lex.size());
+      assertEquals(Optional.of("preferred"), lex.getLabel(CONCEPT));
+      assertEquals(Optional.of("other"), lex.getLabel(URI.create("http://test/vocab#c2")));
+      assertFalse(lex.getLabel(URI.create("http://test/vocab#missing")).isPresent());
+    }
+  }
+
+  @Test
+  void testVersionChangeReloads() throws InterruptedException {
+    AtomicInteger calls = new AtomicInteger();
+    CountDownLatch reloaded = new CountDownLatch(1);
+    try (LexiconCache cache = new LexiconCache(LexiconCache.DEFAULT_TTL)) {
+      Function<URI[], Answer<KnowledgeCarrier>> loader = uris -> {
+        if (calls.incrementAndGet() > 1) {
+          reloaded.countDown();
+        }
+        return Answer.of(lexicon("C" + calls.get()));
+      };
+      cache.getLexica(new URI[]{VOCAB_V1}, loader);
+
+      // a change to an unrelated vocabulary does not trigger a reload
+      cache.onVersionChange(OTHER);
+      cache.onVersionChange(VOCAB_V2);
+      assertTrue(reloaded.await(5, TimeUnit.SECONDS));
+
+      awaitLabel(cache, loader, "C2");
+      assertEquals(2, calls.get());
+    }
+  }
+
+  @Test
+  void testVersionChangeDuringReloadIsNotLost() throws InterruptedException {
+    AtomicInteger calls = new AtomicInteger();
+    CountDownLatch reloading = new CountDownLatch(1);
+    CountDownLatch proceed = new CountDownLatch(1);
+    try (LexiconCache cache = new LexiconCache(LexiconCache.DEFAULT_TTL)) {
+      Function<URI[], Answer<KnowledgeCarrier>> loader = uris -> {
+        int n = calls.incrementAndGet();
+        if (n == 2) {
+          reloading.countDown();
+          await(proceed);
+        }
+        return Answer.of(lexicon("C" + n));
+      };
+      cache.getLexica(new URI[]{VOCAB_V1}, loader);
+
+      cache.onVersionChange(VOCAB_V1);
+      assertTrue(reloading.await(5, TimeUnit.SECONDS));
+      // signaled while the first reload is still running
+      cache.onVersionChange(VOCAB_V1);
+      proceed.countDown();
+
+      awaitLabel(cache, loader, "C3");
+      assertEquals(3, calls.get());
+    }
+  }
+
+  @Test
+  void testInvalidateBySeries() {
+    AtomicInteger calls = new AtomicInteger();
+    try (LexiconCache cache = new LexiconCache(LexiconCache.DEFAULT_TTL)) {
+      Function<URI[], Answer<KnowledgeCarrier>> loader = uris -> {
+        calls.incrementAndGet();
+        return Answer.of(lexicon("C1"));
+      };
+      cache.getLexica(new URI[]{VOCAB_V1, OTHER}, loader);
+      cache.invalidate(VOCAB_V2);
+      cache.getLexica(new URI[]{VOCAB_V1, OTHER}, loader);
+
+      assertEquals(2, calls.get());
+    }
+  }
+
+  @Test
+  void testClosedCacheStillServes() {
+    AtomicInteger calls = new AtomicInteger();
+    LexiconCache cache = new LexiconCache(Duration.ZERO);
+    Function<URI[], Answer<KnowledgeCarrier>> loader = uris -> {
+      calls.incrementAndGet();
+      return Answer.of(lexicon("C1"));
+    };
+    cache.getLexica(new URI[]{VOCAB_V1}, loader);
+    cache.close();
+
+    // expired, but no longer refreshed
+    assertTrue(cache.getLexica(new URI[]{VOCAB_V1}, loader).isSuccess());
+    cache.onVersionChange(VOCAB_V1);
+    assertEquals(1, calls.get());
+  }
+
+  private static KnowledgeCarrier lexicon(String label) {
+    Model m = ModelFactory.createDefaultModel();
+    m.createResource(CONCEPT.toString()).addProperty(SKOS.prefLabel, label);
+    return ofAst(m, rep(OWL_2));
+  }
+
+  private static void awaitLabel(LexiconCache cache,
+      Function<URI[], Answer<KnowledgeCarrier>> loader, String label)
+      throws InterruptedException {
+    long limit = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (System.nanoTime() < limit) {
+      Optional<String> current = cache.getLexicon(new URI[]{VOCAB_V1}, loader).get()
+          .getLabel(CONCEPT);
+      if (current.equals(Optional.of(label))) {
+        return;
+      }
+      Thread.sleep(10);
+    }
+    assertEquals(Optional.of(label), cache.getLexicon(new URI[]{VOCAB_V1}, loader).get()
+        .getLabel(CONCEPT));
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+}
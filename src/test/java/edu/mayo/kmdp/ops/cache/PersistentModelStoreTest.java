@@ -0,0 +1,177 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.cache;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.omg.spec.api4kp._20200801.AbstractCarrier.ofAst;
+import static org.omg.spec.api4kp._20200801.AbstractCarrier.rep;
+import static org.omg.spec.api4kp._20200801.taxonomy.krlanguage.KnowledgeRepresentationLanguageSeries.OWL_2;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.vocabulary.RDFS;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.omg.spec.api4kp._20200801.id.ResourceIdentifier;
+import org.omg.spec.api4kp._20200801.id.SemanticIdentifier;
+import org.omg.spec.api4kp._20200801.services.KnowledgeCarrier;
+
+class PersistentModelStoreTest {
+
+  @TempDir
+  Path dir;
+
+  @Test
+  void testModelRoundTrip() {
+    PersistentModelStore store = PersistentModelStore.open(dir);
+    Model model = model("a");
+    String key = PersistentModelStore.keyOf("owl", "v1", "digest");
+
+    assertTrue(store.store(key, model));
+    Optional<Model> loaded = store.load(key);
+
+    assertTrue(loaded.isPresent());
+    assertTrue(model.isIsomorphicWith(loaded.get()));
+    assertEquals(1, store.hitCount());
+    assertFalse(store.load(PersistentModelStore.keyOf("owl", "v2", "digest")).isPresent());
+    assertEquals(1, store.missCount());
+  }
+
+  @Test
+  void testCarrierRoundTripRestoresTheFullIds() {
+    PersistentModelStore store = PersistentModelStore.open(dir);
+    ResourceIdentifier assetId = SemanticIdentifier.newId(UUID.randomUUID(), "1.0.0")
+        .withName("Ontology A");
+    KnowledgeCarrier kc = ofAst(model("a"), rep(OWL_2))
+        .withAssetId(assetId)
+        .withLabel("Ontology A");
+
+    assertTrue(store.storeCarrier("k", kc));
+    KnowledgeCarrier loaded = store.loadCarrier("k").orElseThrow();
+
+    assertEquals(assetId.getVersionId(), loaded.getAssetId().getVersionId());
+    assertEquals("Ontology A", loaded.getAssetId().getName());
+    assertEquals("Ontology A", loaded.getLabel());
+    assertTrue(model("a").isIsomorphicWith(loaded.as(Model.class).orElseThrow()));
+  }
+
+  @Test
+  void testCarrierWithALegacyDescriptor() throws IOException {
+    PersistentModelStore store = PersistentModelStore.open(dir);
+    UUID uuid = UUID.randomUUID();
+    store.storeCarrier("k", ofAst(model("a"), rep(OWL_2))
+        .withAssetId(SemanticIdentifier.newId(uuid, "1.0.0")));
+
+    // descriptors written before the full ids were stored only have the uuid and version
+    Path meta = filesEndingWith(".properties").get(0);
+    List<String> legacy = Files.readAllLines(meta, UTF_8).stream()
+        .filter(line -> !line.startsWith("asset.json") && !line.startsWith("artifact.json"))
+        .collect(Collectors.toList());
+    Files.write(meta, legacy, UTF_8);
+
+    ResourceIdentifier restored = store.loadCarrier("k").orElseThrow().getAssetId();
+    assertEquals(uuid, restored.getUuid());
+    assertEquals("1.0.0", restored.getVersionTag());
+  }
+
+  @Test
+  void testCorruptedGraphIsAMiss() throws IOException {
+    PersistentModelStore store = PersistentModelStore.open(dir);
+    store.store("k", model("a"));
+    Files.write(filesEndingWith(".rdft").get(0), "not a graph".getBytes(UTF_8));
+
+    assertFalse(store.load("k").isPresent());
+    assertEquals(1, store.errorCount());
+    assertEquals(1, store.missCount());
+  }
+
+  @Test
+  void testTruncatedGraphIsAMiss() throws IOException {
+    PersistentModelStore store = PersistentModelStore.open(dir);
+    store.store("k", model("a", "b", "c"));
+    Path graph = filesEndingWith(".rdft").get(0);
+    byte[] bytes = Files.readAllBytes(graph);
+    // as left by a crash, in the middle of the last triple
+    Files.write(graph, Arrays.copyOf(bytes, bytes.length - 1));
+
+    assertFalse(store.load("k").isPresent());
+    assertEquals(1, store.errorCount());
+  }
+
+  @Test
+  void testCorruptedDescriptorIsAMiss() throws IOException {
+    PersistentModelStore store = PersistentModelStore.open(dir);
+    store.storeCarrier("k", ofAst(model("a"), rep(OWL_2))
+        .withAssetId(SemanticIdentifier.newId(UUID.randomUUID(), "1.0.0")));
+    Files.write(filesEndingWith(".properties").get(0),
+        "asset.uuid=not-a-uuid\n".getBytes(UTF_8));
+
+    assertFalse(store.loadCarrier("k").isPresent());
+    assertEquals(1, store.errorCount());
+  }
+
+  @Test
+  void testInvalidate() throws IOException {
+    PersistentModelStore store = PersistentModelStore.open(dir);
+    store.storeCarrier("k1", ofAst(model("a"), rep(OWL_2)));
+    store.storeCarrier("k2", ofAst(model("b"), rep(OWL_2)));
+
+    store.invalidate("k1");
+    assertFalse(store.loadCarrier("k1").isPresent());
+    assertTrue(store.loadCarrier("k2").isPresent());
+
+    store.invalidateAll();
+    assertFalse(store.loadCarrier("k2").isPresent());
+    assertTrue(filesEndingWith(".rdft").isEmpty());
+    assertTrue(filesEndingWith(".properties").isEmpty());
+  }
+
+  @Test
+  void testUnusableDirectory() throws IOException {
+    Path file = Files.createFile(dir.resolve("not-a-directory"));
+    PersistentModelStore store = PersistentModelStore.open(file);
+
+    assertEquals(1, store.errorCount());
+    assertFalse(store.store("k", model("a")));
+    assertFalse(store.load("k").isPresent());
+  }
+
+  private static Model model(String... labels) {
+    Model m = ModelFactory.createDefaultModel();
+    for (String label : labels) {
+      m.createResource("http://test/onto#" + label).addProperty(RDFS.label, label);
+    }
+    return m;
+  }
+
+  private List<Path> filesEndingWith(String ext) throws IOException {
+    try (Stream<Path> files = Files.list(dir)) {
+      return files.filter(f -> f.toString().endsWith(ext))
+          .collect(Collectors.toList());
+    }
+  }
+
+}
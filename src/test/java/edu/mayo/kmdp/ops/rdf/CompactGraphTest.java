@@ -0,0 +1,188 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.rdf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.mayo.kmdp.ops.bench.SyntheticComposites;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.graph.impl.GraphBase;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.shared.AddDeniedException;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.util.iterator.WrappedIterator;
+import org.apache.jena.vocabulary.OWL2;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+import org.junit.jupiter.api.Test;
+
+class CompactGraphTest {
+
+  private static final String NS = "http://test/";
+
+  @Test
+  void testFindParity() {
+    Graph source = sample().getGraph();
+    CompactGraph compact = CompactGraph.copyOf(source);
+
+    // every pattern, with each position either a wildcard, a node of the graph,
+    // or a node that does not occur in the graph
+    List<Node> candidates = new ArrayList<>(nodesOf(source));
+    candidates.add(Node.ANY);
+    candidates.add(NodeFactory.createURI(NS + "missing"));
+    for (Node s : candidates) {
+      for (Node p : candidates) {
+        for (Node o : candidates) {
+          assertEquals(toSet(source.find(s, p, o)), toSet(compact.find(s, p, o)),
+              () -> "Mismatch on " + s + " " + p + " " + o);
+        }
+      }
+    }
+  }
+
+  @Test
+  void testIteratorParity() {
+    Model flat = ModelFactory.createDefaultModel();
+    SyntheticComposites.ontologyFamily(4, 2, 50).components()
+        .forEach(comp -> flat.read(new ByteArrayInputStream((byte[]) comp.getExpression()), null));
+    Graph source = flat.getGraph();
+    CompactGraph compact = CompactGraph.copyOf(source);
+
+    List<Triple> all = toList(compact.find(Node.ANY, Node.ANY, Node.ANY));
+    assertEquals(source.size(), compact.size());
+    assertEquals(source.size(), all.size());
+    assertEquals(toSet(source.find(Node.ANY, Node.ANY, Node.ANY)), new HashSet<>(all));
+
+    assertEquals(toSet(source.find(Node.ANY, RDFS.subClassOf.asNode(), Node.ANY)),
+        toSet(compact.find(Node.ANY, RDFS.subClassOf.asNode(), Node.ANY)));
+    assertEquals(toSet(source.find(Node.ANY, RDF.type.asNode(), OWL2.Class.asNode())),
+        toSet(compact.find(Node.ANY, RDF.type.asNode(), OWL2.Class.asNode())));
+  }
+
+  @Test
+  void testExhaustedIterator() {
+    CompactGraph compact = CompactGraph.copyOf(sample().getGraph());
+    ExtendedIterator<Triple> it =
+        compact.find(NodeFactory.createURI(NS + "a"), RDF.type.asNode(), Node.ANY);
+    assertTrue(it.hasNext());
+    it.next();
+    assertFalse(it.hasNext());
+    assertThrows(NoSuchElementException.class, it::next);
+  }
+
+  @Test
+  void testDuplicatesAreRemoved() {
+    Triple t = Triple.create(NodeFactory.createURI(NS + "a"), RDFS.label.asNode(),
+        NodeFactory.createLiteral("A"));
+    // a source that does not (unlike the default graph) remove the duplicates itself
+    Graph duplicates = new GraphBase() {
+      @Override
+      protected ExtendedIterator<Triple> graphBaseFind(Triple pattern) {
+        return WrappedIterator.create(Arrays.asList(t, t, t).iterator());
+      }
+    };
+
+    CompactGraph compact = CompactGraph.copyOf(duplicates);
+    assertEquals(1, compact.size());
+    assertEquals(Collections.singletonList(t),
+        toList(compact.find(Node.ANY, Node.ANY, Node.ANY)));
+  }
+
+  @Test
+  void testEmptyGraph() {
+    CompactGraph compact = CompactGraph.copyOf(ModelFactory.createDefaultModel().getGraph());
+    assertEquals(0, compact.size());
+    assertTrue(compact.isEmpty());
+    assertFalse(compact.find(Node.ANY, Node.ANY, Node.ANY).hasNext());
+  }
+
+  @Test
+  void testUpdatesAreDenied() {
+    CompactGraph compact = CompactGraph.copyOf(sample().getGraph());
+    Triple t = Triple.create(NodeFactory.createURI(NS + "x"), RDFS.label.asNode(),
+        NodeFactory.createLiteral("X"));
+    assertThrows(AddDeniedException.class, () -> compact.add(t));
+  }
+
+  @Test
+  void testFreeze() {
+    Model source = sample();
+    Model frozen = CompactGraph.freeze(source);
+
+    assertTrue(frozen.getGraph() instanceof CompactGraph);
+    assertTrue(frozen.isIsomorphicWith(source));
+    assertEquals(source.getNsPrefixMap(), frozen.getNsPrefixMap());
+  }
+
+  private static Model sample() {
+    Model model = ModelFactory.createDefaultModel();
+    model.setNsPrefix("t", NS);
+    Resource a = model.createResource(NS + "a");
+    Resource b = model.createResource(NS + "b");
+    Resource c = model.createResource(NS + "c");
+    Resource anon = model.createResource();
+    model.add(a, RDF.type, OWL2.Class);
+    model.add(b, RDF.type, OWL2.Class);
+    model.add(b, RDFS.subClassOf, a);
+    model.add(c, RDFS.subClassOf, a);
+    model.add(c, RDFS.subClassOf, b);
+    model.add(a, RDFS.label, "A");
+    model.add(b, RDFS.label, "B", "en");
+    model.add(c, RDFS.label, "A");
+    model.add(anon, RDFS.seeAlso, c);
+    model.add(c, RDFS.seeAlso, anon);
+    // a node used as subject, predicate and object
+    model.add(RDFS.subClassOf, RDFS.subClassOf, RDFS.subClassOf);
+    return model;
+  }
+
+  private static Set<Node> nodesOf(Graph graph) {
+    Set<Node> nodes = new HashSet<>();
+    graph.find(Node.ANY, Node.ANY, Node.ANY).forEachRemaining(t -> {
+      nodes.add(t.getSubject());
+      nodes.add(t.getPredicate());
+      nodes.add(t.getObject());
+    });
+    return nodes;
+  }
+
+  private static Set<Triple> toSet(ExtendedIterator<Triple> it) {
+    return new HashSet<>(toList(it));
+  }
+
+  private static List<Triple> toList(ExtendedIterator<Triple> it) {
+    try {
+      return it.toList();
+    } finally {
+      it.close();
+    }
+  }
+
+}
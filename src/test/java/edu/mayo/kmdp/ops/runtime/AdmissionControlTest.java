@@ -0,0 +1,123 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.runtime;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.Test;
+import org.omg.spec.api4kp._20200801.Answer;
+
+class AdmissionControlTest {
+
+  @Test
+  void testRejectionBeyondTheQueue() throws Exception {
+    AdmissionControl admission = AdmissionControl.of(1, 0, null);
+    ExecutorService pool = Executors.newSingleThreadExecutor();
+    CountDownLatch running = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(1);
+    try {
+      CompletableFuture<Answer<String>> first = CompletableFuture.supplyAsync(
+          () -> admission.admit(dl -> hold("first", running, done)), pool);
+      assertTrue(running.await(5, SECONDS));
+
+      assertTrue(admission.admit(dl -> Answer.of("second")).isFailure());
+      assertEquals(1, admission.rejectedCount());
+
+      done.countDown();
+      assertEquals("first", first.get(5, SECONDS).get());
+      assertEquals("third", admission.admit(dl -> Answer.of("third")).get());
+      assertEquals(2, admission.admittedCount());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  void testExpirationWhileQueued() throws Exception {
+    AdmissionControl admission = AdmissionControl.of(1, 1, Duration.ofMillis(50));
+    ExecutorService pool = Executors.newSingleThreadExecutor();
+    CountDownLatch running = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(1);
+    try {
+      CompletableFuture.supplyAsync(
+          () -> admission.admit(Deadline.none(), dl -> hold("first", running, done)), pool);
+      assertTrue(running.await(5, SECONDS));
+
+      assertTrue(admission.admit(dl -> Answer.of("second")).isFailure());
+      assertEquals(1, admission.expiredCount());
+      assertEquals(0, admission.queuedCount());
+    } finally {
+      done.countDown();
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  void testArrivalsDoNotBargeAheadOfTheQueue() throws Exception {
+    AdmissionControl admission = AdmissionControl.of(1, 2, null);
+    ExecutorService pool = Executors.newFixedThreadPool(2);
+    CountDownLatch running = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(1);
+    List<String> order = new CopyOnWriteArrayList<>();
+    try {
+      // the first request, then (on the same thread, as soon as it completes) a new arrival
+      CompletableFuture<Answer<String>> arrival = CompletableFuture.supplyAsync(() -> {
+        admission.admit(dl -> hold("first", running, done));
+        return admission.admit(dl -> record(order, "arrival"));
+      }, pool);
+      assertTrue(running.await(5, SECONDS));
+
+      CompletableFuture<Answer<String>> queued = CompletableFuture.supplyAsync(
+          () -> admission.admit(dl -> record(order, "queued")), pool);
+      while (admission.queuedCount() == 0) {
+        Thread.sleep(5);
+      }
+      // let the queued request park on the semaphore
+      Thread.sleep(100);
+
+      done.countDown();
+      assertTrue(queued.get(5, SECONDS).isSuccess());
+      assertTrue(arrival.get(5, SECONDS).isSuccess());
+      assertEquals(List.of("queued", "arrival"), order);
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  private static Answer<String> hold(String value, CountDownLatch running,
+      CountDownLatch done) {
+    running.countDown();
+    try {
+      done.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return Answer.of(value);
+  }
+
+  private static Answer<String> record(List<String> order, String value) {
+    order.add(value);
+    return Answer.of(value);
+  }
+
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.runtime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.Test;
+
+class OperatorRegistryTest {
+
+  @Test
+  void testOneInstancePerThread() throws Exception {
+    OperatorRegistry registry = OperatorRegistry.newRegistry();
+    AtomicInteger created = new AtomicInteger();
+    Supplier<Object> op = registry.perThread("op", () -> {
+      created.incrementAndGet();
+      return new Object();
+    });
+
+    Object mine = op.get();
+    assertSame(mine, op.get());
+    // a later lookup, e.g. by another pipeline, shares the thread's instance
+    assertSame(mine, registry.perThread("op", Object::new).get());
+    assertEquals(1, created.get());
+
+    ExecutorService pool = Executors.newSingleThreadExecutor();
+    try {
+      Object theirs = CompletableFuture.supplyAsync(op, pool).get();
+      assertNotSame(mine, theirs);
+      assertSame(theirs, CompletableFuture.supplyAsync(op, pool).get());
+      assertEquals(2, created.get());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  void testSharedOperatorsAreCreatedOnce() {
+    OperatorRegistry registry = OperatorRegistry.newRegistry();
+    Object shared = registry.lookup("shared", Object::new);
+    assertSame(shared, registry.lookup("shared", Object::new));
+    assertEquals(1, registry.getMetrics().getStages().size());
+  }
+
+}
@@ -0,0 +1,161 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.runtime;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class SingleFlightTest {
+
+  private final ExecutorService pool = Executors.newFixedThreadPool(2);
+
+  private final CountDownLatch running = new CountDownLatch(1);
+  private final CountDownLatch done = new CountDownLatch(1);
+  private final AtomicInteger executions = new AtomicInteger();
+
+  @AfterEach
+  void shutdown() {
+    done.countDown();
+    pool.shutdownNow();
+  }
+
+  @Test
+  void testIdenticalRequestsShareTheOutcome() throws Exception {
+    SingleFlight<String, List<String>> flight = new SingleFlight<>(ArrayList::new);
+
+    CompletableFuture<List<String>> leader = async(
+        () -> flight.execute("key", () -> hold(List.of("outcome"))));
+    assertTrue(running.await(5, SECONDS));
+    CompletableFuture<List<String>> follower = async(
+        () -> flight.execute("key", () -> hold(List.of("other"))));
+    awaitCoalesced(flight);
+
+    done.countDown();
+    List<String> first = leader.get(5, SECONDS);
+    List<String> second = follower.get(5, SECONDS);
+    assertEquals(List.of("outcome"), first);
+    assertEquals(first, second);
+    // each request gets its own copy
+    assertNotSame(first, second);
+    assertEquals(1, executions.get());
+    assertEquals(1, flight.coalescedCount());
+    assertEquals(0, flight.inFlightCount());
+  }
+
+  @Test
+  void testFollowerGivesUpAtItsDeadline() throws Exception {
+    SingleFlight<String, String> flight = new SingleFlight<>();
+
+    async(() -> flight.execute("key", () -> hold("outcome")));
+    assertTrue(running.await(5, SECONDS));
+
+    assertEquals("expired", flight.execute("key", () -> "other",
+        Deadline.in(Duration.ofMillis(50)), () -> "expired"));
+    assertEquals(1, executions.get());
+  }
+
+  @Test
+  void testTheLastParticipantCleansUp() throws Exception {
+    SingleFlight<String, String> flight = new SingleFlight<>();
+    AtomicInteger cleanups = new AtomicInteger();
+    AtomicInteger retries = new AtomicInteger();
+    AtomicInteger retriesAtCleanup = new AtomicInteger(-1);
+    Runnable cleanup = () -> {
+      cleanups.incrementAndGet();
+      retriesAtCleanup.set(retries.get());
+    };
+
+    // the leader does not complete in its own time: its outcome is not shared
+    Deadline leaderDeadline = Deadline.none();
+    CompletableFuture<String> leader = async(() -> flight.execute("key", () -> {
+      String outcome = hold("late");
+      leaderDeadline.cancel();
+      return outcome;
+    }, leaderDeadline, () -> "expired", cleanup));
+    assertTrue(running.await(5, SECONDS));
+
+    CompletableFuture<String> follower = async(() -> flight.execute("key", () -> {
+      retries.incrementAndGet();
+      return "retried";
+    }, Deadline.none(), () -> "expired", cleanup));
+    while (flight.callCount() < 2) {
+      Thread.sleep(5);
+    }
+
+    done.countDown();
+    assertEquals("late", leader.get(5, SECONDS));
+    assertEquals("retried", follower.get(5, SECONDS));
+    // cleaned up once, after the follower retried on its own
+    assertEquals(1, cleanups.get());
+    assertEquals(1, retriesAtCleanup.get());
+  }
+
+  @Test
+  void testReleaseDefersToTheRequestsInFlight() throws Exception {
+    SingleFlight<String, String> flight = new SingleFlight<>();
+    AtomicInteger cleanups = new AtomicInteger();
+
+    flight.release("idle", cleanups::incrementAndGet);
+    assertEquals(1, cleanups.get());
+
+    CompletableFuture<String> leader = async(() -> flight.execute("key", () -> hold("outcome"),
+        Deadline.none(), () -> "expired", cleanups::incrementAndGet));
+    assertTrue(running.await(5, SECONDS));
+
+    flight.release("key", cleanups::incrementAndGet);
+    assertEquals(1, cleanups.get());
+
+    done.countDown();
+    leader.get(5, SECONDS);
+    assertEquals(2, cleanups.get());
+  }
+
+  private <T> CompletableFuture<T> async(Supplier<T> request) {
+    return CompletableFuture.supplyAsync(request, pool);
+  }
+
+  private <T> T hold(T outcome) {
+    executions.incrementAndGet();
+    running.countDown();
+    try {
+      done.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return outcome;
+  }
+
+  private static void awaitCoalesced(SingleFlight<?, ?> flight) throws InterruptedException {
+    while (flight.callCount() < 2) {
+      Thread.sleep(5);
+    }
+    // let the follower find the request in flight
+    Thread.sleep(100);
+  }
+
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.runtime;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.Test;
+
+class StripedLocksTest {
+
+  private final StripedLocks locks = StripedLocks.of(10);
+
+  @Test
+  void testStripes() {
+    assertEquals(16, locks.size());
+    UUID key = UUID.randomUUID();
+    assertSame(locks.lockFor(key), locks.lockFor(UUID.fromString(key.toString())));
+  }
+
+  @Test
+  void testReentrant() {
+    Object key = "kb";
+    assertEquals("inner", locks.withLock(key, Deadline.none(),
+        () -> locks.withLock(key, Deadline.none(), () -> "inner", () -> "expired"),
+        () -> "expired"));
+  }
+
+  @Test
+  void testWaitEndsWithTheDeadline() throws Exception {
+    Object key = "kb";
+    ExecutorService pool = Executors.newSingleThreadExecutor();
+    CountDownLatch locked = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(1);
+    try {
+      CompletableFuture<String> holder = CompletableFuture.supplyAsync(
+          () -> locks.withLock(key, () -> {
+            locked.countDown();
+            await(done);
+            return "holder";
+          }), pool);
+      assertTrue(locked.await(5, SECONDS));
+
+      assertEquals("expired", locks.withLock(key, Deadline.in(Duration.ofMillis(50)),
+          () -> "waiter", () -> "expired"));
+
+      done.countDown();
+      assertEquals("holder", holder.get(5, SECONDS));
+      assertEquals("waiter", locks.withLock(key, Deadline.in(Duration.ofSeconds(5)),
+          () -> "waiter", () -> "expired"));
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  void testWaitEndsWithTheCancellation() throws Exception {
+    Object key = "kb";
+    ExecutorService pool = Executors.newFixedThreadPool(2);
+    CountDownLatch locked = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(1);
+    try {
+      CompletableFuture.runAsync(() -> locks.withLock(key, () -> {
+        locked.countDown();
+        await(done);
+        return null;
+      }), pool);
+      assertTrue(locked.await(5, SECONDS));
+
+      Deadline deadline = Deadline.none();
+      CompletableFuture<String> waiter = CompletableFuture.supplyAsync(
+          () -> locks.withLock(key, deadline, () -> "waiter", () -> "cancelled"), pool);
+      deadline.cancel();
+      assertEquals("cancelled", waiter.get(5, SECONDS));
+    } finally {
+      done.countDown();
+      pool.shutdownNow();
+    }
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+}
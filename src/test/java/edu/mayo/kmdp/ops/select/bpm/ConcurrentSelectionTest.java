@@ -0,0 +1,124 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.select.bpm;
+
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.stream.Collectors.toCollection;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.omg.spec.api4kp._20200801.taxonomy.parsinglevel.ParsingLevelSeries.Abstract_Knowledge_Expression;
+
+import edu.mayo.kmdp.knowledgebase.KnowledgeBaseProvider;
+import edu.mayo.kmdp.language.LanguageDeSerializer;
+import edu.mayo.kmdp.language.parsers.dmn.v1_2.DMN12Parser;
+import edu.mayo.kmdp.ops.bench.InMemoryAssets;
+import edu.mayo.kmdp.ops.bench.SyntheticComposites;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.jena.rdf.model.Model;
+import org.junit.jupiter.api.Test;
+import org.omg.spec.api4kp._20200801.Answer;
+import org.omg.spec.api4kp._20200801.id.Pointer;
+import org.omg.spec.api4kp._20200801.id.SemanticIdentifier;
+import org.omg.spec.api4kp._20200801.services.CompositeKnowledgeCarrier;
+import org.omg.spec.api4kp._20200801.services.KnowledgeCarrier;
+
+/**
+ * Many threads sharing one selector (and Knowledge Base provider), each selecting the concepts
+ * of Knowledge Bases of its own, with the components processed concurrently:
+ * every selection must succeed, with the same concepts as a selection in isolation
+ */
+class ConcurrentSelectionTest {
+
+  private static final int THREADS = 8;
+  private static final int REQUESTS_PER_THREAD = 4;
+
+  private final KnowledgeBaseProvider kbManager;
+
+  ConcurrentSelectionTest() {
+    InMemoryAssets assets = new InMemoryAssets();
+    assets.register(SyntheticComposites.decisionComposite(0, 16, 3));
+    kbManager = new KnowledgeBaseProvider(assets.repository());
+  }
+
+  @Test
+  void testConcurrentSelections() throws Exception {
+    ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+    CPMConceptSelector selector = new CPMConceptSelector(kbManager)
+        .withParallelism(pool);
+
+    SortedSet<String> expected = select(selector);
+    assertFalse(expected.isEmpty());
+
+    // the requests run on their own threads, while the components are processed on the pool
+    ExecutorService requests = Executors.newFixedThreadPool(THREADS);
+    CountDownLatch start = new CountDownLatch(1);
+    try {
+      List<Future<List<SortedSet<String>>>> results = new ArrayList<>();
+      for (int t = 0; t < THREADS; t++) {
+        results.add(requests.submit(() -> {
+          start.await();
+          List<SortedSet<String>> concepts = new ArrayList<>();
+          for (int j = 0; j < REQUESTS_PER_THREAD; j++) {
+            concepts.add(select(selector));
+          }
+          return concepts;
+        }));
+      }
+      start.countDown();
+      for (Future<List<SortedSet<String>>> result : results) {
+        for (SortedSet<String> concepts : result.get(5, MINUTES)) {
+          assertEquals(expected, concepts);
+        }
+      }
+    } finally {
+      requests.shutdownNow();
+      pool.shutdownNow();
+    }
+  }
+
+  private SortedSet<String> select(CPMConceptSelector selector) {
+    // a new composite, and thus a new Knowledge Base, for each request
+    KnowledgeCarrier kc = ((CompositeKnowledgeCarrier) new LanguageDeSerializer(
+        asList(new DMN12Parser()))
+        .applyLift(SyntheticComposites.decisionComposite(0, 16, 3), Abstract_Knowledge_Expression)
+        .orElseThrow(IllegalStateException::new))
+        .withAssetId(SemanticIdentifier.newId(UUID.randomUUID(), SyntheticComposites.VERSION));
+    // the selector serializes the accesses to its provider
+    Pointer kb = selector.initKnowledgeBase(kc, null)
+        .orElseThrow(IllegalStateException::new);
+    Answer<Pointer> selected = selector.select(kb.getUuid(), kb.getVersionTag(), null, null);
+    assertTrue(selected.isSuccess(), selected::printExplanation);
+    SortedSet<String> concepts = selector.getKnowledgeBaseManifestation(selected.get())
+        .flatOpt(carrier -> carrier.as(Model.class))
+        .orElseThrow(IllegalStateException::new)
+        .listStatements()
+        .mapWith(Object::toString)
+        .toList().stream()
+        .collect(toCollection(TreeSet::new));
+    selector.releaseKnowledgeBase(selected.get());
+    selector.releaseKnowledgeBase(kb);
+    return concepts;
+  }
+
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.select.fhir.stu3;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.hl7.fhir.dstu3.model.Extension;
+import org.hl7.fhir.dstu3.model.Questionnaire;
+import org.hl7.fhir.dstu3.model.Reference;
+import org.hl7.fhir.dstu3.model.ValueSet;
+import org.hl7.fhir.dstu3.model.ValueSet.ValueSetExpansionContainsComponent;
+import org.junit.jupiter.api.Test;
+
+class ValueSetAccumulatorTest {
+
+  private static final String SYSTEM = "http://test/codes";
+
+  @Test
+  void testConceptsAreMergedInOrderWithoutDuplicates() {
+    Questionnaire q1 = new Questionnaire();
+    Questionnaire q2 = new Questionnaire();
+
+    ValueSet merged = new ValueSetAccumulator(false)
+        .add(q1, valueSet("a", "b"))
+        .add(q2, valueSet("b", "c"))
+        .toValueSet();
+
+    assertEquals(List.of("a", "b", "c"), codes(merged));
+    assertTrue(merged.getExpansion().getContains().stream()
+        .allMatch(concept -> concept.getExtension().isEmpty()));
+  }
+
+  @Test
+  void testSameCodeInDifferentSystemsIsNotMerged() {
+    ValueSet other = new ValueSet();
+    other.getExpansion().addContains().setSystem("http://test/other").setCode("a");
+
+    ValueSet merged = new ValueSetAccumulator(false)
+        .add(new Questionnaire(), valueSet("a"))
+        .add(new Questionnaire(), other)
+        .toValueSet();
+
+    assertEquals(2, merged.getExpansion().getContains().size());
+  }
+
+  @Test
+  void testSourcesAreTracked() {
+    Questionnaire q1 = new Questionnaire().setUrl("http://test/forms/q1");
+    Questionnaire q2 = new Questionnaire();
+    q2.setId("q2");
+    ValueSet first = valueSet("a", "b");
+
+    ValueSet merged = new ValueSetAccumulator(true)
+        .add(q1, first)
+        .add(q2, valueSet("b"))
+        .toValueSet();
+
+    assertEquals(List.of("http://test/forms/q1"), sources(merged, "a"));
+    assertEquals(List.of("http://test/forms/q1", "Questionnaire/q2"), sources(merged, "b"));
+    // the selected ValueSets are not altered
+    assertTrue(first.getExpansion().getContains().stream()
+        .allMatch(concept -> concept.getExtension().isEmpty()));
+  }
+
+  private static ValueSet valueSet(String... codes) {
+    ValueSet vs = new ValueSet();
+    for (String code : codes) {
+      vs.getExpansion().addContains().setSystem(SYSTEM).setCode(code);
+    }
+    return vs;
+  }
+
+  private static List<String> codes(ValueSet vs) {
+    return vs.getExpansion().getContains().stream()
+        .map(ValueSetExpansionContainsComponent::getCode)
+        .collect(toList());
+  }
+
+  private static List<String> sources(ValueSet vs, String code) {
+    return vs.getExpansion().getContains().stream()
+        .filter(concept -> code.equals(concept.getCode()))
+        .flatMap(concept -> concept
+            .getExtensionsByUrl(MultiQuestionnaireConceptSelector.SOURCE_QUESTIONNAIRE_EXT)
+            .stream())
+        .map(Extension::getValue)
+        .map(ref -> ((Reference) ref).getReference())
+        .collect(toList());
+  }
+
+}
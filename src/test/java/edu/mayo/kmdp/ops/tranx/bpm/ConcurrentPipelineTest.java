@@ -0,0 +1,170 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.tranx.bpm;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.mayo.kmdp.ops.bench.InMemoryAssets;
+import edu.mayo.kmdp.ops.bench.SyntheticComposites;
+import edu.mayo.kmdp.ops.runtime.Deadline;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.hl7.fhir.dstu3.model.PlanDefinition;
+import org.hl7.fhir.dstu3.model.PlanDefinition.PlanDefinitionActionComponent;
+import org.junit.jupiter.api.Test;
+import org.omg.spec.api4kp._20200801.Answer;
+import org.omg.spec.api4kp._20200801.id.Pointer;
+import org.omg.spec.api4kp._20200801.id.SemanticIdentifier;
+import org.omg.spec.api4kp._20200801.services.CompositeKnowledgeCarrier;
+import org.omg.spec.api4kp._20200801.services.KnowledgeCarrier;
+
+/**
+ * Many threads sharing one pipeline, each transforming Knowledge Bases of its own:
+ * every transformation must succeed, with the same result as a transformation in isolation
+ */
+class ConcurrentPipelineTest {
+
+  private static final int THREADS = 8;
+  private static final int REQUESTS_PER_THREAD = 4;
+
+  @Test
+  void testConcurrentTransformations() throws Exception {
+    InMemoryAssets assets = new InMemoryAssets();
+    assets.register(SyntheticComposites.decisionComposite(4, 16, 3));
+    CcpmToPlanDefPipeline pipeline = new PreConstructedCcpmToPlanDefPipeline(
+        assets.catalog(), assets.repository(), InMemoryAssets.emptyDataShapes());
+
+    String expected = summarize(transform(pipeline));
+
+    ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+    CountDownLatch start = new CountDownLatch(1);
+    try {
+      List<Future<List<String>>> results = new ArrayList<>();
+      for (int t = 0; t < THREADS; t++) {
+        results.add(pool.submit(() -> {
+          start.await();
+          List<String> summaries = new ArrayList<>();
+          for (int j = 0; j < REQUESTS_PER_THREAD; j++) {
+            summaries.add(summarize(transform(pipeline)));
+          }
+          return summaries;
+        }));
+      }
+      start.countDown();
+      for (Future<List<String>> result : results) {
+        for (String summary : result.get(5, MINUTES)) {
+          assertEquals(expected, summary);
+        }
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  void testAsyncTransformDoesNotWaitForAQueuedPrefetch() throws Exception {
+    InMemoryAssets assets = new InMemoryAssets();
+    assets.register(SyntheticComposites.decisionComposite(4, 16, 3));
+    CcpmToPlanDefPipeline pipeline = new PreConstructedCcpmToPlanDefPipeline(
+        assets.catalog(), assets.repository(), InMemoryAssets.emptyDataShapes());
+
+    // a saturated executor: the retrieval of the lexica, submitted first, is stuck in the queue
+    List<Runnable> queued = new CopyOnWriteArrayList<>();
+    ExecutorService pool = Executors.newSingleThreadExecutor();
+    Executor saturated = task -> {
+      if (queued.isEmpty()) {
+        queued.add(task);
+      } else {
+        pool.execute(task);
+      }
+    };
+    try {
+      Pointer kb = newKnowledgeBase(pipeline);
+      Answer<KnowledgeCarrier> planDef = pipeline.applyNamedTransformAsync(
+          CcpmToPlanDefPipeline.id, kb.getUuid(), kb.getVersionTag(), null, saturated)
+          .get(5, MINUTES);
+      assertTrue(planDef.isSuccess(), planDef::printExplanation);
+      assertEquals(1, queued.size());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  void testCancellingAnAsyncTransformCancelsTheDeadline() {
+    InMemoryAssets assets = new InMemoryAssets();
+    assets.register(SyntheticComposites.decisionComposite(4, 16, 3));
+    CcpmToPlanDefPipeline pipeline = new PreConstructedCcpmToPlanDefPipeline(
+        assets.catalog(), assets.repository(), InMemoryAssets.emptyDataShapes());
+
+    // nothing is ever run
+    Executor stalled = task -> { };
+    Deadline deadline = Deadline.none();
+    Pointer kb = newKnowledgeBase(pipeline);
+    CompletableFuture<Answer<KnowledgeCarrier>> result = pipeline.applyNamedTransformAsync(
+        CcpmToPlanDefPipeline.id, kb.getUuid(), kb.getVersionTag(), null, stalled, deadline);
+
+    assertTrue(result.cancel(true));
+    assertTrue(deadline.isCancelled());
+  }
+
+  private static PlanDefinition transform(CcpmToPlanDefPipeline pipeline) {
+    Pointer kb = newKnowledgeBase(pipeline);
+    Answer<KnowledgeCarrier> planDef = pipeline.applyNamedTransform(
+        CcpmToPlanDefPipeline.id, kb.getUuid(), kb.getVersionTag(), null);
+    assertTrue(planDef.isSuccess(), planDef::printExplanation);
+    return planDef.get().as(PlanDefinition.class).orElseThrow();
+  }
+
+  private static Pointer newKnowledgeBase(CcpmToPlanDefPipeline pipeline) {
+    // a new composite, and thus a new Knowledge Base, for each request
+    KnowledgeCarrier composite =
+        ((CompositeKnowledgeCarrier) SyntheticComposites.decisionComposite(4, 16, 3))
+            .withAssetId(SemanticIdentifier.newId(UUID.randomUUID(), SyntheticComposites.VERSION));
+    return pipeline.initKnowledgeBase(composite, null)
+        .orElseThrow(IllegalStateException::new);
+  }
+
+  /**
+   * @return the (sorted) titles of the actions, at any depth, and the number of
+   * contained resources: the ids depend on the Knowledge Base, and are not compared
+   */
+  private static String summarize(PlanDefinition planDef) {
+    List<String> actions = new ArrayList<>();
+    collectActions(planDef.getAction(), "", actions);
+    Collections.sort(actions);
+    return planDef.getContained().size() + " " + actions;
+  }
+
+  private static void collectActions(List<PlanDefinitionActionComponent> actions, String path,
+      List<String> titles) {
+    for (PlanDefinitionActionComponent action : actions) {
+      String title = path + "/" + action.getTitle();
+      titles.add(title);
+      collectActions(action.getAction(), title, titles);
+    }
+  }
+
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.tranx.bpm;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.omg.spec.api4kp._20200801.AbstractCarrier.rep;
+import static org.omg.spec.api4kp._20200801.taxonomy.krlanguage.KnowledgeRepresentationLanguageSeries.FHIR_STU3;
+import static org.omg.spec.api4kp._20200801.taxonomy.parsinglevel.ParsingLevelSeries.Serialized_Knowledge_Expression;
+
+import edu.mayo.kmdp.ops.bench.InMemoryAssets;
+import edu.mayo.kmdp.ops.bench.SyntheticComposites;
+import edu.mayo.kmdp.ops.runtime.OperatorRegistry;
+import edu.mayo.kmdp.ops.tranx.bpm.StageCache.SourceKey;
+import edu.mayo.kmdp.ops.tranx.bpm.StageCache.Stage;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.hl7.fhir.dstu3.model.PlanDefinition;
+import org.junit.jupiter.api.Test;
+import org.omg.spec.api4kp._20200801.AbstractCarrier;
+import org.omg.spec.api4kp._20200801.Answer;
+import org.omg.spec.api4kp._20200801.api.transrepresentation.v4.server.DeserializeApiInternal;
+import org.omg.spec.api4kp._20200801.id.Pointer;
+import org.omg.spec.api4kp._20200801.id.SemanticIdentifier;
+import org.omg.spec.api4kp._20200801.services.CompositeKnowledgeCarrier;
+import org.omg.spec.api4kp._20200801.services.KnowledgeCarrier;
+
+class StageCacheTest {
+
+  @Test
+  void testOutputsAreCopiedIntoAndOutOfTheCache() {
+    StageCache cache = StageCache.lru(8);
+    SourceKey key = cache.keyOf(SyntheticComposites.decisionComposite(1, 2, 1)).orElseThrow();
+    AtomicInteger computed = new AtomicInteger();
+    PlanDefinition original = new PlanDefinition().setTitle("original");
+
+    KnowledgeCarrier first = cache.apply(Stage.TRANSLATE, key, () -> {
+      computed.incrementAndGet();
+      return Answer.of(AbstractCarrier.ofAst(original, rep(FHIR_STU3)));
+    }).orElseThrow(IllegalStateException::new);
+    // the downstream stages rewrite the resources they are given
+    original.setTitle("rewritten");
+    ((PlanDefinition) first.getExpression()).setTitle("rewritten");
+
+    KnowledgeCarrier second = cache.apply(Stage.TRANSLATE, key, () -> {
+      computed.incrementAndGet();
+      return Answer.failed(new IllegalStateException());
+    }).orElseThrow(IllegalStateException::new);
+    assertEquals(1, computed.get());
+    assertEquals("original", ((PlanDefinition) second.getExpression()).getTitle());
+    assertNotSame(first.getExpression(), second.getExpression());
+  }
+
+  @Test
+  void testParsedCompositesAreNotKeyed() {
+    StageCache cache = StageCache.lru(8);
+    KnowledgeCarrier parsed =
+        AbstractCarrier.ofAst(new PlanDefinition(), rep(FHIR_STU3));
+    assertFalse(cache.keyOf(parsed).isPresent());
+  }
+
+  /**
+   * The parsed DMN/CMMN models are cached, and handed out, without copies:
+   * the following stages (decision flattening and translation) must not rewrite them
+   */
+  @Test
+  void testDecisionStagesLeaveTheParsedModelsUntouched() {
+    InMemoryAssets assets = new InMemoryAssets();
+    assets.register(SyntheticComposites.decisionComposite(4, 16, 3));
+    DeserializeApiInternal parser = OperatorRegistry.shared().decisionModelParser();
+
+    AtomicReference<CompositeKnowledgeCarrier> parsed = new AtomicReference<>();
+    AtomicReference<List<String>> parsedForms = new AtomicReference<>();
+    CcpmToPlanDefPipeline pipeline = new PreConstructedCcpmToPlanDefPipeline(
+        assets.catalog(), assets.repository(), InMemoryAssets.emptyDataShapes())
+        .withStageCache(StageCache.lru(16))
+        .addInjector(1, ans -> {
+          if (ans.isSuccess()) {
+            parsed.set((CompositeKnowledgeCarrier) ans.get());
+            parsedForms.set(serialize(parser, parsed.get()));
+          }
+        });
+
+    KnowledgeCarrier composite =
+        ((CompositeKnowledgeCarrier) SyntheticComposites.decisionComposite(4, 16, 3))
+            .withAssetId(SemanticIdentifier.newId(UUID.randomUUID(), SyntheticComposites.VERSION));
+    Pointer kb = pipeline.initKnowledgeBase(composite, null)
+        .orElseThrow(IllegalStateException::new);
+    Answer<KnowledgeCarrier> planDef = pipeline.applyNamedTransform(
+        CcpmToPlanDefPipeline.id, kb.getUuid(), kb.getVersionTag(), null);
+
+    assertTrue(planDef.isSuccess(), planDef::printExplanation);
+    assertEquals(parsedForms.get(), serialize(parser, parsed.get()));
+  }
+
+  private static List<String> serialize(DeserializeApiInternal parser,
+      CompositeKnowledgeCarrier parsed) {
+    return parsed.componentList().stream()
+        .map(comp -> parser.applyLower(comp, Serialized_Knowledge_Expression)
+            .flatOpt(KnowledgeCarrier::asString)
+            .orElseThrow(IllegalStateException::new))
+        .collect(toList());
+  }
+
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright © 2018 Mayo Clinic (RSTKNOWLEDGEMGMT@mayo.edu)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package edu.mayo.kmdp.ops.tranx.owl2;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.mayo.kmdp.ops.bench.SyntheticComposites;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.jena.rdf.model.Model;
+import org.junit.jupiter.api.Test;
+import org.omg.spec.api4kp._20200801.Answer;
+import org.omg.spec.api4kp._20200801.services.KnowledgeCarrier;
+
+/**
+ * Many threads sharing one transrepresentator, with a degree of parallelism, each skosifying
+ * an ontology family: every run must succeed, with the same schemes as a run in isolation,
+ * and release its Knowledge Bases
+ */
+class ConcurrentSkosificationTest {
+
+  private static final int THREADS = 4;
+  private static final int REQUESTS_PER_THREAD = 2;
+
+  private final KnowledgeCarrier family = SyntheticComposites.ontologyFamily(9, 4, 10);
+
+  @Test
+  void testConcurrentRuns() throws Exception {
+    List<Long> expected;
+    try (ComplexOwl2SKOSTransrepresentator sequential = new ComplexOwl2SKOSTransrepresentator()) {
+      expected = summarize(sequential.applyTransrepresent(family, null, null));
+    }
+    assertFalse(expected.isEmpty());
+
+    ExecutorService requests = Executors.newFixedThreadPool(THREADS);
+    CountDownLatch start = new CountDownLatch(1);
+    try (ComplexOwl2SKOSTransrepresentator shared = new ComplexOwl2SKOSTransrepresentator()
+        .withParallelism(THREADS)
+        .withImportClosureCache(64L * 1024 * 1024)) {
+      List<Future<List<List<Long>>>> results = new ArrayList<>();
+      for (int t = 0; t < THREADS; t++) {
+        results.add(requests.submit(() -> {
+          start.await();
+          List<List<Long>> schemes = new ArrayList<>();
+          for (int j = 0; j < REQUESTS_PER_THREAD; j++) {
+            schemes.add(summarize(shared.applyTransrepresent(family, null, null)));
+          }
+          return schemes;
+        }));
+      }
+      start.countDown();
+      for (Future<List<List<Long>>> result : results) {
+        for (List<Long> schemes : result.get(5, MINUTES)) {
+          assertEquals(expected, schemes);
+        }
+      }
+      assertTrue(shared.runs.isEmpty());
+    } finally {
+      requests.shutdownNow();
+    }
+  }
+
+  @Test
+  void testConcurrentStreamingRuns() throws Exception {
+    int components = (int) family.components().filter(comp -> comp != family).count();
+    ExecutorService requests = Executors.newFixedThreadPool(THREADS);
+    try (ComplexOwl2SKOSTransrepresentator shared = new ComplexOwl2SKOSTransrepresentator()
+        .withParallelism(THREADS)) {
+      List<Future<Integer>> results = new ArrayList<>();
+      for (int t = 0; t < THREADS; t++) {
+        results.add(requests.submit(() -> {
+          AtomicInteger emitted = new AtomicInteger();
+          Answer<Integer> count = shared
+              .applyTransrepresent(family, null, skos -> emitted.incrementAndGet());
+          assertTrue(count.isSuccess(), count::printExplanation);
+          assertEquals(count.get().intValue(), emitted.get());
+          return emitted.get();
+        }));
+      }
+      for (Future<Integer> result : results) {
+        assertEquals(components, result.get(5, MINUTES).intValue());
+      }
+      assertTrue(shared.runs.isEmpty());
+    } finally {
+      requests.shutdownNow();
+    }
+  }
+
+  /**
+   * @return the (sorted) sizes of the SKOS schemes, which do not depend on the order
+   * in which the components complete
+   */
+  private static List<Long> summarize(Answer<KnowledgeCarrier> skos) {
+    assertTrue(skos.isSuccess(), skos::printExplanation);
+    KnowledgeCarrier aggregate = skos.get();
+    return aggregate.components()
+        .filter(comp -> comp != aggregate)
+        .map(comp -> comp.as(Model.class).map(Model::size).orElse(-1L))
+        .sorted()
+        .collect(toList());
+  }
+
+}